@@ -0,0 +1,104 @@
+#!/usr/bin/env bash
+
+## Compares piece hashing and TLS throughput of aria2c build variants on a device connected through adb, fully offline.
+## Usage: ./aria2c_variants.sh <name>=<path to aria2c> [<name>=<path to aria2c> ...]
+## Env: SIZE_MB (payload size, default 256), RUNS (best of, default 3), PORT (default 8443), ANDROID_SERIAL
+set -e
+
+SIZE_MB=${SIZE_MB:-256}
+RUNS=${RUNS:-3}
+PORT=${PORT:-8443}
+REMOTE=/data/local/tmp/aria2-bench
+WORK=$(mktemp -d)
+trap 'kill $SERVER 2>/dev/null; adb reverse --remove tcp:$PORT >/dev/null 2>&1; rm -rf "$WORK"' EXIT
+
+if [ $# -eq 0 ]; then
+  echo "Usage: $0 <name>=<path to aria2c> [<name>=<path to aria2c> ...]" >&2
+  exit 1
+fi
+
+## Payload, torrent with SHA-1 pieces and self-signed certificate
+head -c $((SIZE_MB * 1024 * 1024)) /dev/urandom >"$WORK/payload.bin"
+python3 - "$WORK/payload.bin" "$WORK/payload.torrent" <<'EOF'
+import hashlib, os, sys
+
+def bencode(v):
+    if isinstance(v, int): return b'i%de' % v
+    if isinstance(v, bytes): return b'%d:%s' % (len(v), v)
+    if isinstance(v, str): return bencode(v.encode())
+    if isinstance(v, dict): return b'd' + b''.join(bencode(k) + bencode(v[k]) for k in sorted(v)) + b'e'
+    raise TypeError(v)
+
+piece = 1024 * 1024
+pieces = b''
+with open(sys.argv[1], 'rb') as f:
+    for chunk in iter(lambda: f.read(piece), b''):
+        pieces += hashlib.sha1(chunk).digest()
+
+info = {'name': 'payload.bin', 'length': os.path.getsize(sys.argv[1]), 'piece length': piece, 'pieces': pieces, 'private': 1}
+with open(sys.argv[2], 'wb') as f:
+    f.write(bencode({'announce': 'http://127.0.0.1:1/announce', 'info': info}))
+EOF
+openssl req -x509 -newkey rsa:2048 -nodes -days 1 -subj /CN=127.0.0.1 -keyout "$WORK/key.pem" -out "$WORK/cert.pem" 2>/dev/null
+
+## Loopback HTTPS server reachable from the device through adb reverse
+python3 - "$WORK" "$PORT" <<'EOF' &
+import http.server, ssl, sys
+ctx = ssl.SSLContext(ssl.PROTOCOL_TLS_SERVER)
+ctx.load_cert_chain(sys.argv[1] + '/cert.pem', sys.argv[1] + '/key.pem')
+handler = lambda *a: http.server.SimpleHTTPRequestHandler(*a, directory=sys.argv[1])
+server = http.server.ThreadingHTTPServer(('127.0.0.1', int(sys.argv[2])), handler)
+server.socket = ctx.wrap_socket(server.socket, server_side=True)
+server.serve_forever()
+EOF
+SERVER=$!
+adb reverse tcp:$PORT tcp:$PORT >/dev/null
+
+adb shell "rm -rf $REMOTE && mkdir -p $REMOTE/data"
+adb push "$WORK/payload.bin" "$WORK/payload.torrent" $REMOTE/data/ >/dev/null
+
+## Prints the best wall time of $RUNS runs in milliseconds, fails with the exit code if aria2c fails (e.g. SIGILL)
+best_of() {
+  local best=0
+  for _ in $(seq "$RUNS"); do
+    local out code ms
+    out=$(adb shell "cd $REMOTE && s=\$(date +%s%N) && $1 >/dev/null 2>&1; c=\$?; e=\$(date +%s%N); echo \$c \$(((e - s) / 1000000))" | tr -d '\r')
+    code=${out%% *}
+    ms=${out#* }
+    if [ "$code" -ne 0 ]; then
+      echo "exit $code"
+      return 1
+    fi
+
+    if [ "$ms" -lt 1 ]; then ms=1; fi
+    if [ "$best" -eq 0 ] || [ "$ms" -lt "$best" ]; then best=$ms; fi
+  done
+  echo "$best"
+}
+
+## Throughput in MiB/s, or the failure as is
+rate() {
+  case $1 in
+    exit*) echo "failed ($1)" ;;
+    *) echo $((SIZE_MB * 1000 / $1)) ;;
+  esac
+}
+
+COMMON="--no-conf=true --enable-dht=false --enable-dht6=false --bt-enable-lpd=false --enable-peer-exchange=false --console-log-level=error --summary-interval=0"
+
+printf '%-16s %12s %12s %12s\n' variant "hash MiB/s" "TLS MiB/s" "size KiB"
+for variant in "$@"; do
+  name=${variant%%=*}
+  path=${variant#*=}
+  adb push "$path" $REMOTE/aria2c-$name >/dev/null
+  adb shell chmod 755 $REMOTE/aria2c-$name
+
+  hash_ms=$(best_of "./aria2c-$name $COMMON --check-integrity=true --bt-seed-unverified=false --seed-time=0 -d data data/payload.torrent") || failed=1
+  tls_ms=$(best_of "rm -f tls/payload.bin; ./aria2c-$name $COMMON --check-certificate=false --file-allocation=none -x1 -d tls https://127.0.0.1:$PORT/payload.bin") || failed=1
+  size_kb=$(($(stat -c %s "$path") / 1024))
+
+  printf '%-16s %12s %12s %12s\n' "$name" "$(rate "$hash_ms")" "$(rate "$tls_ms")" $size_kb
+done
+
+adb shell "rm -rf $REMOTE"
+exit ${failed:-0}
@@ -0,0 +1,48 @@
+package com.gianlu.aria2lib.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandLineBenchmark {
+    private final Map<String, String> params = new HashMap<>();
+
+    @Setup
+    public void setup() throws IOException {
+        params.put("--daemon", "false");
+        params.put("--enable-color", "false");
+        params.put("--enable-rpc", null);
+        params.put("--rpc-secret", "f2c8d1a7b3e94c05");
+        params.put("--rpc-listen-port", "6800");
+        params.put("--dir", "/storage/emulated/0/Download");
+        params.put("--check-certificate", "true");
+        params.put("--ca-certificate", "/data/user/0/com.gianlu.aria2android/files/certs.pem");
+        params.put("--input-file", "/data/user/0/com.gianlu.aria2android/files/session");
+        params.put("--save-session", "/data/user/0/com.gianlu.aria2android/files/session");
+
+        for (Map.Entry<String, String> entry : ConfigFile.parse(Fixtures.read("aria2.conf")))
+            params.put("--" + entry.getKey(), entry.getValue());
+    }
+
+    @Benchmark
+    public String[] startArgs() {
+        return CommandLine.args(params);
+    }
+
+    @Benchmark
+    public String forLog() {
+        return CommandLine.forLog("/data/app/com.gianlu.aria2android/lib/arm64/libaria2c.so", CommandLine.args(params));
+    }
+}
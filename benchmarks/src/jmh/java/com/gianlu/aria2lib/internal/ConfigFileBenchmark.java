@@ -0,0 +1,37 @@
+package com.gianlu.aria2lib.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigFileBenchmark {
+    @Param({"1", "100"})
+    public int copies;
+    private String config;
+
+    @Setup
+    public void setup() throws IOException {
+        String base = Fixtures.read("aria2.conf");
+        StringBuilder builder = new StringBuilder(base.length() * copies);
+        for (int i = 0; i < copies; i++) builder.append(base);
+        config = builder.toString();
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, String>> parse() {
+        return ConfigFile.parse(config);
+    }
+}
@@ -0,0 +1,34 @@
+package com.gianlu.aria2lib.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static String read(String name) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines(name)) builder.append(line).append('\n');
+        return builder.toString();
+    }
+
+    static List<String> lines(String name) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream("/" + name);
+        if (in == null) throw new IOException("Missing fixture: " + name);
+
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) lines.add(line);
+        }
+
+        return lines;
+    }
+}
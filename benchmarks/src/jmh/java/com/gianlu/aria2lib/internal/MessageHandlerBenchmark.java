@@ -0,0 +1,89 @@
+package com.gianlu.aria2lib.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MessageHandlerBenchmark {
+    private static final int BATCH = 4096; // INFO lane capacity, dropped messages would never count down the latch
+    private final AtomicReference<CountDownLatch> latch = new AtomicReference<>();
+    private final AtomicReference<CountDownLatch> terminated = new AtomicReference<>();
+    @Param({"1", "4"})
+    public int listeners;
+    private MessageHandler handler;
+
+    private static Message message(Message.Type type, Object obj) {
+        Message msg = Message.obtain(type, obj);
+        msg.postedAt = System.nanoTime();
+        return msg;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        handler = new MessageHandler("benchmark");
+        for (int i = 0; i < listeners - 1; i++) handler.listeners.add(msg -> {
+        });
+        handler.listeners.add(msg -> {
+            if (msg.type() == Message.Type.PROCESS_TERMINATED) terminated.get().countDown();
+            else latch.get().countDown();
+        });
+        new Thread(handler, "benchmark-messageHandler").start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handler.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void endToEnd() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH);
+        latch.set(done);
+
+        for (int i = 0; i < BATCH; i++)
+            handler.post(message(Message.Type.PROCESS_INFO, "line"));
+
+        done.await();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void lifecycleUnderInfoFlood(Flood flood) throws InterruptedException {
+        handler.post(message(Message.Type.PROCESS_TERMINATED, null));
+        terminated.get().await();
+    }
+
+    @State(Scope.Thread)
+    public static class Flood {
+
+        @Setup(Level.Invocation)
+        public void flood(MessageHandlerBenchmark bench) {
+            bench.terminated.set(new CountDownLatch(1));
+            bench.latch.set(new CountDownLatch(BATCH));
+            for (int i = 0; i < BATCH; i++)
+                bench.handler.post(message(Message.Type.PROCESS_INFO, "line"));
+        }
+
+        @TearDown(Level.Invocation)
+        public void drain(MessageHandlerBenchmark bench) throws InterruptedException {
+            bench.latch.get().await();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.gianlu.aria2lib.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessagePoolBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public Message uncontended() {
+        Message msg = Message.obtain(Message.Type.PROCESS_INFO, "line");
+        msg.recycle();
+        return msg;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Message contended() {
+        Message msg = Message.obtain(Message.Type.PROCESS_INFO, "line");
+        msg.recycle();
+        return msg;
+    }
+
+    @Benchmark
+    @Group("producerConsumer")
+    @GroupThreads(3)
+    public Message streams() {
+        Message msg = Message.obtain(Message.Type.PROCESS_INFO, "line");
+        msg.recycle();
+        return msg;
+    }
+
+    @Benchmark
+    @Group("producerConsumer")
+    @GroupThreads(1)
+    public Message monitor() {
+        Message msg = Message.obtain(Message.Type.MONITOR_UPDATE, MonitorUpdate.obtain(1234, 340, 16 * 1024 * 1024));
+        ((MonitorUpdate) msg.object()).recycle();
+        msg.recycle();
+        return msg;
+    }
+}
@@ -0,0 +1,34 @@
+package com.gianlu.aria2lib.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OutputParserBenchmark {
+    private String[] lines;
+
+    @Setup
+    public void setup() throws IOException {
+        lines = Fixtures.lines("aria2c-output.txt").toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) {
+        for (String line : lines) {
+            Message msg = OutputParser.parse(line);
+            bh.consume(msg.object());
+            msg.recycle();
+        }
+    }
+}
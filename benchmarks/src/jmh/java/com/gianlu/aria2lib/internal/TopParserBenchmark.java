@@ -0,0 +1,67 @@
+package com.gianlu.aria2lib.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TopParserBenchmark {
+    private String[] oldLines;
+    private String[] newLines;
+    private String[] memoryValues;
+
+    private static String[] matching(TopParser parser, List<String> lines) {
+        List<String> list = new ArrayList<>();
+        for (String line : lines)
+            if (parser.matches(line)) list.add(line);
+
+        return list.toArray(new String[0]);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        oldLines = matching(TopParser.OLD_PARSER, Fixtures.lines("top-old.txt"));
+        newLines = matching(TopParser.NEW_PARSER, Fixtures.lines("top-new.txt"));
+        memoryValues = new String[]{"812", "16.2M", "1.1G", "932K", "48M"};
+    }
+
+    @Benchmark
+    public void parseOld(Blackhole bh) {
+        for (String line : oldLines) {
+            MonitorUpdate update = TopParser.OLD_PARSER.parseLine(line);
+            bh.consume(update);
+            if (update != null) update.recycle();
+        }
+    }
+
+    @Benchmark
+    public void parseNew(Blackhole bh) {
+        for (String line : newLines) {
+            MonitorUpdate update = TopParser.NEW_PARSER.parseLine(line);
+            bh.consume(update);
+            if (update != null) update.recycle();
+        }
+    }
+
+    @Benchmark
+    public void matchAllNew(Blackhole bh) {
+        for (String line : newLines) bh.consume(TopParser.NEW_PARSER.matches(line));
+    }
+
+    @Benchmark
+    public void memoryBytesNew(Blackhole bh) {
+        for (String value : memoryValues) bh.consume(TopParser.NEW_PARSER.getMemoryBytes(value));
+    }
+}
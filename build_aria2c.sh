@@ -1,18 +1,76 @@
 #!/usr/bin/env bash
 
+## Usage: ./build_aria2c.sh <tag/commit/branch> [generic|size|speed|speed-crypto]
+REF=$1
+PROFILE=${2:-generic}
+ABIS="armeabi-v7a arm64-v8a x86 x86_64"
+
+## Optimization profiles
+profile_flags() {
+  local abi=$1
+  case "$PROFILE" in
+  generic)
+    echo ""
+    ;;
+  size)
+    echo "-Os -ffunction-sections -fdata-sections"
+    ;;
+  speed | speed-crypto)
+    local flags="-O3 -flto"
+    case "$abi" in
+    armeabi-v7a) flags="$flags -mfpu=neon -mtune=cortex-a53" ;;
+    arm64-v8a)
+      if [ "$PROFILE" = "speed-crypto" ]; then
+        flags="$flags -march=armv8-a+crypto -mtune=cortex-a55"
+      else
+        flags="$flags -mtune=cortex-a55"
+      fi
+      ;;
+    x86) flags="$flags -mssse3 -mtune=atom" ;;
+    x86_64) flags="$flags -msse4.2 -mpopcnt -mtune=intel" ;;
+    esac
+    echo "$flags"
+    ;;
+  *)
+    echo "Unknown profile: $PROFILE" >&2
+    exit 1
+    ;;
+  esac
+}
+
+profile_ldflags() {
+  case "$PROFILE" in
+  size) echo "-Wl,--gc-sections -s" ;;
+  speed | speed-crypto) echo "-O3 -flto" ;;
+  *) echo "" ;;
+  esac
+}
+
+profile_flags "" >/dev/null || exit 1
+
 ## Clone
 git clone https://github.com/devgianlu/aria2-android --recurse-submodules --depth 1
 cd aria2-android
-git checkout $@
+git checkout "$REF"
 
 ## Prepare env
 export SILENT=true
 
 ## Do stuff
-./build_all.sh
+echo "Building aria2c with profile $PROFILE"
+if [ "$PROFILE" = "generic" ]; then
+  ./build_all.sh
+elif [ -x ./build.sh ]; then
+  for abi in $ABIS; do
+    CFLAGS="$(profile_flags "$abi")" CXXFLAGS="$(profile_flags "$abi")" LDFLAGS="$(profile_ldflags)" ./build.sh "$abi" || exit 1
+  done
+else
+  ## build_all.sh may override the flags and silently produce a generic executable
+  echo "Profile $PROFILE requires the per-ABI ./build.sh entry point, not found in $REF" >&2
+  exit 1
+fi
 
 ## Check the result
-file -E ./bin/armeabi-v7a/bin/aria2c || exit 1
-file -E ./bin/arm64-v8a/bin/aria2c || exit 1
-file -E ./bin/x86/bin/aria2c || exit 1
-file -E ./bin/x86_64/bin/aria2c || exit 1
+for abi in $ABIS; do
+  file -E "./bin/$abi/bin/aria2c" || exit 1
+done
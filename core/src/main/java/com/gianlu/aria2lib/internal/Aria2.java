@@ -0,0 +1,768 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.gianlu.aria2lib.BadEnvironmentException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public final class Aria2 {
+    private static final String TAG = Aria2.class.getSimpleName();
+    private static final int TAIL_LINES = 50;
+    private static Aria2 instance;
+    private final int id;
+    private final MessageHandler messageHandler;
+    private final Object processLock = new Object();
+    private final Map<String, String> appliedOptions = new HashMap<>();
+    private final Map<String, String> liveOptions = new HashMap<>();
+    private Env env;
+    private File outputDir;
+    private volatile String diskCacheCap;
+    private volatile StorageProfiler.Profile storageProfile;
+    private TaskGroup tasks;
+    private Process currentProcess;
+    private volatile int pid = -1;
+    private volatile boolean stopRequested = false;
+    private volatile long startedAt = 0;
+    private volatile int lastCpu = -1;
+    private volatile long lastRss = 0;
+    private volatile long lastMonitorAt = 0;
+    private final Metrics.Counter startsCounter;
+    private final Metrics.Counter infoLines;
+    private final Metrics.Counter progressLines;
+    private final Metrics.Counter warnLines;
+    private final Metrics.Counter errorLines;
+    private final LogPolicy logPolicy;
+    private final OutputTail tail = new OutputTail(TAIL_LINES);
+    private final MonitorHistory history = new MonitorHistory();
+
+    private Aria2(int id) {
+        this.id = id;
+
+        String instance = String.valueOf(id);
+        Metrics metrics = Metrics.get();
+        startsCounter = metrics.counter("aria2_process_starts_total", "Number of aria2c process starts.", "instance", instance);
+        infoLines = metrics.counter("aria2_log_lines_total", "Lines printed by aria2c by level.", "instance", instance, "level", "info");
+        progressLines = metrics.counter("aria2_log_lines_total", "Lines printed by aria2c by level.", "instance", instance, "level", "progress");
+        warnLines = metrics.counter("aria2_log_lines_total", "Lines printed by aria2c by level.", "instance", instance, "level", "warn");
+        errorLines = metrics.counter("aria2_log_lines_total", "Lines printed by aria2c by level.", "instance", instance, "level", "error");
+        metrics.gauge("aria2_uptime_seconds", "Seconds since the aria2c process started.", () -> isRunning() ? (System.currentTimeMillis() - startedAt) / 1000.0 : 0, "instance", instance);
+
+        logPolicy = new LogPolicy(instance, LogPolicy.Level.NOTICE);
+        messageHandler = new MessageHandler(instance);
+        Scheduler.get().runDedicated("aria2-messageHandler-" + id, messageHandler);
+    }
+
+    @NonNull
+    public static Aria2 get() {
+        if (instance == null) instance = new Aria2(0);
+        return instance;
+    }
+
+    @NonNull
+    static Aria2 create(int id) {
+        if (id == 0) return get();
+        else return new Aria2(id);
+    }
+
+    private static int pidOf(@NonNull Process process) {
+        try {
+            return ((Number) Process.class.getMethod("pid").invoke(process)).intValue();
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+        }
+
+        try {
+            Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getInt(process);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            Logger.w(TAG, "Cannot retrieve process PID.", ex);
+            return -1;
+        }
+    }
+
+    private static int exitCode(@NonNull Process process) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return process.waitFor();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean waitFor(@NonNull Process process, int timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long startTime = System.nanoTime();
+        long rem = unit.toNanos(timeout);
+
+        do {
+            try {
+                process.exitValue();
+                return true;
+            } catch (IllegalThreadStateException ex) {
+                if (rem > 0)
+                    Thread.sleep(Math.min(TimeUnit.NANOSECONDS.toMillis(rem) + 1, 100));
+            }
+
+            rem = unit.toNanos(timeout) - (System.nanoTime() - startTime);
+        } while (rem > 0);
+        return false;
+    }
+
+    @Nullable
+    private static String getprop(@NonNull String key) {
+        Process p = null;
+        try {
+            p = Runtime.getRuntime().exec("getprop " + key);
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                String l = in.readLine();
+                if (l.isEmpty()) return null;
+                else return l;
+            }
+        } catch (IOException ex) {
+            return null;
+        } finally {
+            if (p != null) p.destroy();
+        }
+    }
+
+    @Nullable
+    private File storeAllCertificates(@NonNull File parent) {
+        File certs = new File(parent, "ca-certs");
+        try (FileOutputStream out = new FileOutputStream(certs, false)) {
+            for (Certificate cert : Platform.certificates().certificates()) {
+                out.write("-----BEGIN CERTIFICATE-----\n".getBytes(StandardCharsets.US_ASCII));
+                out.write(Base64Codec.encode(cert.getEncoded(), 64).getBytes(StandardCharsets.US_ASCII));
+                out.write("-----END CERTIFICATE-----\n".getBytes(StandardCharsets.US_ASCII));
+            }
+
+            return certs;
+        } catch (IOException | GeneralSecurityException ex) {
+            Logger.e(TAG, "Failed getting CA certificates.", ex);
+        }
+
+        return null;
+    }
+
+    void addListener(@NonNull MessageListener listener) {
+        messageHandler.listeners.add(listener);
+    }
+
+    void removeListener(@NonNull MessageListener listener) {
+        messageHandler.listeners.remove(listener);
+    }
+
+    public boolean hasEnv() {
+        return env != null && env.exec.exists();
+    }
+
+    @NonNull
+    @WorkerThread
+    public String version() throws BadEnvironmentException, IOException {
+        Env env = this.env;
+        if (env == null)
+            throw new BadEnvironmentException("Missing environment!");
+
+        return BinaryMetadata.get(env.exec, env.parent).versionLine;
+    }
+
+    @Nullable
+    public BinaryMetadata metadata() {
+        Env env = this.env;
+        if (env == null) return null;
+
+        BinaryMetadata metadata = BinaryMetadata.cached(env.exec, env.parent);
+        if (metadata == null) BinaryMetadata.refresh(env.exec, env.parent);
+        return metadata;
+    }
+
+    @NonNull
+    private Process execWithParams(boolean redirect, String... params) throws BadEnvironmentException, IOException {
+        if (env == null)
+            throw new BadEnvironmentException("Missing environment!");
+
+        String[] cmdline = new String[params.length + 1];
+        cmdline[0] = env.execPath();
+        System.arraycopy(params, 0, cmdline, 1, params.length);
+        Process process = new ProcessBuilder(cmdline).redirectErrorStream(redirect).start();
+        if (process == null) throw new IOException("Process is null!");
+        return process;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public int pid() {
+        return pid;
+    }
+
+    @Nullable
+    public StorageProfiler.Profile storageProfile() {
+        return storageProfile;
+    }
+
+    void setOutputDirectory(@Nullable File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    void setDiskCacheCap(@Nullable String diskCacheCap) {
+        this.diskCacheCap = diskCacheCap;
+    }
+
+    public void loadEnv(@NonNull File parent, @NonNull File exec, @NonNull File session) throws BadEnvironmentException {
+        loadEnv(parent, exec, session, Platform.config());
+    }
+
+    void loadEnv(@NonNull File parent, @NonNull File exec, @NonNull File session, @NonNull RuntimeConfig config) throws BadEnvironmentException {
+        if (!exec.exists())
+            throw new BadEnvironmentException(exec.getAbsolutePath() + " doesn't exists!");
+
+        if (!exec.canExecute() && !exec.setExecutable(true))
+            throw new BadEnvironmentException(exec.getAbsolutePath() + " can't be executed!");
+
+        if (session.exists()) {
+            if (!session.canRead() && !session.setReadable(true))
+                throw new BadEnvironmentException(session.getAbsolutePath() + " can't be read!");
+        } else {
+            try {
+                if (!session.createNewFile())
+                    throw new BadEnvironmentException(session.getAbsolutePath() + " can't be created!");
+            } catch (IOException ex) {
+                throw new BadEnvironmentException(ex);
+            }
+        }
+
+        File dir = outputDir != null ? outputDir : new File(config.outputDirectory());
+        StorageProfiler profiler = StorageProfiler.get();
+        StorageProfiler.Profile profile = storageProfile = profiler.cached(dir, parent);
+        if (config.storageTuning() && profile == null) profiler.profileInBackground(dir, parent); // Used from the next start
+        Map<String, String> storageOptions = config.storageTuning() && profile != null ? profile.options() : Collections.<String, String>emptyMap();
+
+        this.env = new Env(id, config, parent, exec, session, outputDir, storageOptions, diskCacheCap, storeAllCertificates(parent));
+        BinaryMetadata.refresh(exec, parent);
+    }
+
+    boolean start() throws BadEnvironmentException, IOException {
+        return start(Platform.config());
+    }
+
+    boolean start(@NonNull RuntimeConfig config) throws BadEnvironmentException, IOException {
+        if (currentProcess != null) {
+            postMessage(Message.obtain(Message.Type.PROCESS_STARTED, "[already started]"));
+            return false;
+        }
+
+        if (env == null)
+            throw new BadEnvironmentException("Missing environment!");
+
+        reloadEnv(config);
+        synchronized (appliedOptions) {
+            appliedOptions.clear();
+            liveOptions.clear();
+        }
+
+        String execPath = env.execPath();
+        String[] params = env.startArgs();
+
+        TaskGroup previous = tasks;
+        if (previous != null && !previous.awaitTermination(2, TimeUnit.SECONDS))
+            Logger.w(TAG, "Tasks of the previous process are still running.");
+
+        synchronized (processLock) {
+            stopRequested = false;
+            Process process = currentProcess = execWithParams(true, params);
+            pid = pidOf(process);
+            startedAt = System.currentTimeMillis();
+            startsCounter.inc();
+            tail.clear();
+            lastCpu = -1;
+            lastRss = 0;
+            lastMonitorAt = 0;
+
+            logPolicy.threshold(LogPolicy.Level.parse(env.params.get("--log-level"), LogPolicy.Level.NOTICE));
+            logPolicy.logOnStdout("-".equals(env.params.get("--log")));
+
+            TaskGroup group = tasks = Scheduler.get().group("aria2-" + id);
+            group.own(process.getInputStream());
+            group.fork("output", new OutputReader(process, group));
+            group.forkPeriodic(this::flushSamples, 5, 5, TimeUnit.SECONDS);
+            if (config.showPerformance())
+                group.fork("monitor", new Monitor(group, config.monitorDelay()));
+        }
+
+        postMessageDelayed(Message.obtain(Message.Type.PROCESS_STARTED, CommandLine.forLog(execPath, params)), 500 /* Ensure service is started */);
+        return true;
+    }
+
+    private void reloadEnv(@NonNull RuntimeConfig config) throws BadEnvironmentException {
+        if (env == null)
+            throw new BadEnvironmentException("Missing environment!");
+
+        loadEnv(env.parent, env.exec, env.session, config);
+    }
+
+    private void processTerminated(@NonNull Process process, @NonNull TaskGroup group, int code) {
+        long now = System.currentTimeMillis();
+        long monitorAt = lastMonitorAt;
+        Termination termination = new Termination(code, stopRequested, now - startedAt, tail.snapshot(), lastCpu, lastRss, monitorAt == 0 ? -1 : now - monitorAt);
+        Metrics.get().counter("aria2_terminations_total", "aria2c process terminations by exit code category.", "instance", String.valueOf(id), "category", termination.category.name().toLowerCase(Locale.ROOT)).inc();
+        postMessage(Message.obtain(Message.Type.PROCESS_TERMINATED, code, termination));
+
+        synchronized (processLock) {
+            if (currentProcess == process) {
+                currentProcess = null;
+                pid = -1;
+            }
+        }
+
+        process.destroy();
+        group.close();
+    }
+
+    private void monitorFailed(@NonNull Exception ex) {
+        postMessage(Message.obtain(Message.Type.MONITOR_FAILED, ex));
+    }
+
+    void post(@NonNull Message message) {
+        postMessage(message);
+    }
+
+    private void postMessage(@NonNull Message message) {
+        message.delay = 0;
+        message.instance = id;
+        message.postedAt = System.nanoTime();
+        messageHandler.post(message);
+        log(message);
+    }
+
+    private void postMessageDelayed(@NonNull Message message, int millis) {
+        message.delay = millis;
+        message.instance = id;
+        message.postedAt = System.nanoTime();
+        messageHandler.post(message);
+        log(message);
+    }
+
+    private static void log(@NonNull Message message) {
+        switch (message.type()) {
+            case MONITOR_UPDATE:
+            case DOWNLOAD_PROGRESS:
+                break;
+            case PROCESS_INFO:
+            case PROCESS_STARTED:
+            case PROCESS_TERMINATED:
+                Logger.i(TAG, message.toString());
+                break;
+            case PROCESS_WARN:
+            case MEMORY_LEVEL_CHANGED:
+            case SPACE_LEVEL_CHANGED:
+                Logger.w(TAG, message.toString());
+                break;
+            default:
+            case PROCESS_ERROR:
+            case MONITOR_FAILED:
+                Logger.e(TAG, message.toString());
+                break;
+        }
+    }
+
+    private void handleStreamMessage(@NonNull String line) {
+        if (ProgressParser.isReadout(line)) {
+            List<DownloadProgress> progress = new ArrayList<>(1);
+            if (ProgressParser.parse(line, progress) > 0) {
+                progressLines.inc();
+                for (DownloadProgress p : progress)
+                    postMessage(Message.obtain(Message.Type.DOWNLOAD_PROGRESS, p));
+                return;
+            }
+        }
+
+        tail.add(line);
+        Message msg = OutputParser.parse(line);
+        switch (msg.type()) {
+            case PROCESS_WARN:
+                warnLines.inc();
+                break;
+            case PROCESS_ERROR:
+                errorLines.inc();
+                break;
+            default:
+                infoLines.inc();
+                break;
+        }
+
+        List<Message> summaries = new ArrayList<>(0);
+        boolean emit = logPolicy.sample(msg.type(), (String) msg.object(), System.nanoTime(), summaries);
+        for (Message summary : summaries) postMessage(summary);
+
+        if (emit) postMessage(msg);
+        else msg.recycle();
+    }
+
+    private void flushSamples() {
+        List<Message> summaries = new ArrayList<>(0);
+        logPolicy.flush(System.nanoTime(), summaries);
+        for (Message summary : summaries) postMessage(summary);
+    }
+
+    @NonNull
+    public MonitorHistory history() {
+        return history;
+    }
+
+    @NonNull
+    public LogPolicy.Level logLevel() {
+        return logPolicy.threshold();
+    }
+
+    @WorkerThread
+    public void setLogLevel(@NonNull LogPolicy.Level level) throws IOException {
+        logPolicy.threshold(level);
+
+        Aria2Rpc rpc = rpc();
+        if (rpc != null) {
+            Map<String, String> options = Collections.singletonMap("log-level", level.option());
+            rpc.changeGlobalOption(options);
+            recordLiveOptions(options);
+        }
+    }
+
+    void stop() {
+        stopRequested = true;
+        destroyProcess();
+    }
+
+    boolean wasStopRequested() {
+        return stopRequested;
+    }
+
+    private void destroyProcess() {
+        synchronized (processLock) {
+            if (currentProcess != null) {
+                currentProcess.destroy();
+                currentProcess = null;
+                pid = -1;
+            }
+
+            if (tasks != null) tasks.close();
+        }
+    }
+
+    public boolean delete() {
+        stop();
+        return env.delete();
+    }
+
+    public boolean isRunning() {
+        return currentProcess != null;
+    }
+
+    @Nullable
+    public Aria2Rpc rpc() {
+        Env env = this.env;
+        if (env == null || !isRunning()) return null;
+
+        try {
+            return new Aria2Rpc(env.rpcPort, env.rpcToken);
+        } catch (IOException ex) {
+            Logger.e(TAG, "Failed creating RPC client.", ex);
+            return null;
+        }
+    }
+
+    @Nullable
+    public String outputDirectory() {
+        Env env = this.env;
+        if (env == null) return null;
+        else return env.params.get("--dir");
+    }
+
+    @NonNull
+    Map<String, String> startedCustomOptions() {
+        Env env = this.env;
+        if (env == null) return new HashMap<>();
+        else return env.customOptions;
+    }
+
+    @NonNull
+    Map<String, String> runningCustomOptions() {
+        Map<String, String> options = new HashMap<>(startedCustomOptions());
+        synchronized (appliedOptions) {
+            options.putAll(appliedOptions);
+        }
+
+        return options;
+    }
+
+    @NonNull
+    Map<String, String> liveOptions() {
+        Map<String, String> options = runningCustomOptions();
+        synchronized (appliedOptions) {
+            options.putAll(liveOptions);
+        }
+
+        return options;
+    }
+
+    void recordAppliedOptions(@NonNull Map<String, String> options) {
+        synchronized (appliedOptions) {
+            appliedOptions.putAll(options);
+            liveOptions.putAll(options);
+        }
+    }
+
+    // Runtime changes made outside the custom options (auto tuning, memory pressure, log level)
+    void recordLiveOptions(@NonNull Map<String, String> options) {
+        synchronized (appliedOptions) {
+            liveOptions.putAll(options);
+        }
+    }
+
+    static boolean isForcedOption(@NonNull String key) {
+        return Env.FORCED_OPTIONS.contains(key);
+    }
+
+    @NonNull
+    static Map<String, String> loadCustomOptions() {
+        return new HashMap<>(Platform.config().customOptions());
+    }
+
+    public interface MessageListener extends Message.Listener {
+    }
+
+    private static class Env {
+        static final Set<String> FORCED_OPTIONS = new HashSet<>(Arrays.asList("daemon", "enable-color", "enable-rpc",
+                "rpc-secret", "rpc-listen-port", "dir", "rpc-listen-all", "rpc-allow-origin-all", "input-file", "save-session"));
+        private final File parent;
+        private final File exec;
+        private final File session;
+        private final Map<String, String> params;
+        private final Map<String, String> customOptions;
+        private final int rpcPort;
+        private final String rpcToken;
+
+        Env(int id, @NonNull ConfigProvider config, @NonNull File parent, @NonNull File exec, @NonNull File session, @Nullable File outputDir, @NonNull Map<String, String> storageOptions, @Nullable String diskCacheCap, @Nullable File cacerts) {
+            this.parent = parent;
+            this.exec = exec;
+            this.session = session;
+            this.params = new HashMap<>();
+
+            // Can be overridden
+            params.put("--log", "-");
+            params.put("--log-level", config.logLevel());
+            params.put("--console-log-level", "error");
+            params.put("--summary-interval", String.valueOf(config.summaryInterval()));
+
+            if (config.saveSession())
+                params.put("--save-session-interval", "30");
+
+            String dns1 = getprop("net.dns1");
+            String dns2 = getprop("net.dns2");
+            if (dns1 != null || dns2 != null) {
+                String dnsString = dns1 != null ? dns1 : dns2;
+                if (dns1 != null) dnsString += "," + dns1;
+                else dnsString += "," + dns2;
+
+                params.put("--async-dns", "true");
+                params.put("--async-dns-server", dnsString);
+            }
+
+            if (config.checkCertificate() && cacerts != null) {
+                params.put("--check-certificate", "true");
+                params.put("--ca-certificate", cacerts.getAbsolutePath());
+            } else {
+                params.put("--check-certificate", "false");
+            }
+
+            for (Map.Entry<String, String> entry : storageOptions.entrySet())
+                params.put("--" + entry.getKey(), entry.getValue());
+
+            customOptions = new HashMap<>(config.customOptions());
+            for (Map.Entry<String, String> entry : customOptions.entrySet())
+                params.put("--" + entry.getKey(), entry.getValue());
+
+            if (diskCacheCap != null)
+                params.put("--disk-cache", diskCacheCap);
+
+            if (id != 0) {
+                params.put("--dht-file-path", new File(parent, "dht-" + id + ".dat").getAbsolutePath());
+                params.put("--dht-file-path6", new File(parent, "dht6-" + id + ".dat").getAbsolutePath());
+            }
+
+            rpcPort = config.rpcPort() + id;
+            rpcToken = config.rpcToken();
+
+            // Cannot be overridden
+            params.put("--daemon", "false");
+            params.put("--enable-color", "false");
+            params.put("--enable-rpc", "true");
+            params.put("--rpc-secret", rpcToken);
+            params.put("--rpc-listen-port", String.valueOf(rpcPort));
+            params.put("--dir", outputDir != null ? outputDir.getAbsolutePath() : config.outputDirectory());
+            params.put("--rpc-listen-all", Boolean.toString(config.rpcListenAll()));
+            params.put("--rpc-allow-origin-all", Boolean.toString(config.rpcAllowOriginAll()));
+
+            if (config.saveSession()) {
+                params.put("--input-file", session.getAbsolutePath());
+                params.put("--save-session", session.getAbsolutePath());
+            }
+        }
+
+        @NonNull
+        String[] startArgs() {
+            return CommandLine.args(params);
+        }
+
+        @NonNull
+        String execPath() {
+            return exec.getAbsolutePath();
+        }
+
+        boolean delete() {
+            return session.delete();
+        }
+    }
+
+    private class OutputReader implements Runnable {
+        private final Process process;
+        private final TaskGroup group;
+
+        OutputReader(@NonNull Process process, @NonNull TaskGroup group) {
+            this.process = process;
+            this.group = group;
+        }
+
+        @Override
+        public void run() {
+            try (InputStream in = process.getInputStream()) {
+                LineReader.read(in, (buf, off, len) -> {
+                    if (logPolicy.accept(buf, off, len))
+                        handleStreamMessage(new String(buf, off, len, StandardCharsets.UTF_8));
+                });
+            } catch (IOException ignored) {
+            }
+
+            processTerminated(process, group, exitCode(process));
+        }
+    }
+
+    private class Monitor implements Runnable {
+        private final byte[] INVALID_STRING = "Invalid argument".getBytes();
+        private final TaskGroup group;
+        private final int delay;
+
+        Monitor(@NonNull TaskGroup group, int delay) {
+            this.group = group;
+            this.delay = delay;
+        }
+
+        @Nullable
+        private TopParser selectPattern() throws IOException, InterruptedException {
+            Process process = Runtime.getRuntime().exec("top --version");
+            group.own(process::destroy);
+
+            if (waitFor(process, 1000, TimeUnit.MILLISECONDS)) {
+                int exitCode = process.exitValue();
+                if (exitCode != 0) {
+                    byte[] buffer = new byte[INVALID_STRING.length];
+                    if (buffer.length != process.getErrorStream().read(buffer) || !Arrays.equals(buffer, INVALID_STRING)) {
+                        Logger.e(TAG, String.format(Locale.getDefault(), "Couldn't identify `top` version. {invalidString: %s, exitCode: %d}", new String(buffer), exitCode));
+                        return null;
+                    } else {
+                        return TopParser.OLD_PARSER;
+                    }
+                } else {
+                    return TopParser.NEW_PARSER;
+                }
+            } else {
+                Logger.e(TAG, "Couldn't identify `top` version, process didn't exit within 1000ms.");
+                return null;
+            }
+        }
+
+        @Override
+        public void run() {
+            ProcSampler sampler = null;
+            TopParser parser;
+            try {
+                parser = selectPattern();
+                if (parser == null) {
+                    postMessage(Message.obtain(Message.Type.MONITOR_FAILED));
+                    return;
+                }
+            } catch (IOException | InterruptedException ex) {
+                Logger.e(TAG, "Couldn't find suitable pattern for `top`.", ex);
+                return;
+            }
+
+            Process process = null;
+            try {
+                process = Runtime.getRuntime().exec(parser.getCommand(delay));
+                group.own(process::destroy);
+                try (Scanner scanner = new Scanner(process.getInputStream())) {
+                    while (!group.isClosed() && scanner.hasNextLine()) {
+                        String line = scanner.nextLine();
+                        if (parser.matches(line)) {
+                            MonitorUpdate update;
+                            try {
+                                update = parser.parseLine(line);
+                            } catch (RuntimeException ex) {
+                                Logger.e(TAG, "Failed parsing `top` line: " + line, ex);
+                                continue;
+                            }
+
+                            if (update == null) continue;
+
+                            int expected = pid;
+                            if (expected == -1 || update.pid() == expected) {
+                                if (sampler == null || sampler.pid() != update.pid())
+                                    sampler = new ProcSampler(update.pid());
+
+                                sampler.sample(update);
+                                lastCpu = update.cpuFixed();
+                                lastRss = update.rss();
+                                lastMonitorAt = System.currentTimeMillis();
+                                history.record(lastMonitorAt, lastCpu, lastRss);
+                                postMessage(Message.obtain(Message.Type.MONITOR_UPDATE, update));
+                            } else {
+                                update.recycle();
+                            }
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                monitorFailed(ex);
+            } finally {
+                if (process != null) process.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.gianlu.aria2lib.BadEnvironmentException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public final class Aria2Cluster {
+    private static final String TAG = Aria2Cluster.class.getSimpleName();
+    private static final int MAX_RESTARTS = 5;
+    private static final long RESTART_WINDOW = TimeUnit.MINUTES.toMillis(5);
+    private static final long MAX_RESTART_DELAY = TimeUnit.SECONDS.toMillis(30);
+    private static final long SPEED_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+    private static Aria2Cluster instance;
+    private final List<Aria2> instances = new CopyOnWriteArrayList<>();
+    private final List<InstanceState> states = new CopyOnWriteArrayList<>();
+    private final List<Aria2.MessageListener> listeners = new CopyOnWriteArrayList<>();
+    private final Aria2.MessageListener forwarder = this::onInstanceMessage;
+    private final Object dispatchLock = new Object();
+    private volatile boolean shouldRun = false;
+    private SpaceGuard spaceGuard;
+
+    private Aria2Cluster() {
+        add(Aria2.get());
+
+        // Sampled in background, snapshots may be taken on the main thread and must not block on RPC
+        Executor speedSampler = Scheduler.get().serial("aria2-speedSampler");
+        Scheduler.get().scheduleWithFixedDelay(() -> speedSampler.execute(this::sampleSpeed), SPEED_INTERVAL, SPEED_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @NonNull
+    public static Aria2Cluster get() {
+        if (instance == null) instance = new Aria2Cluster();
+        return instance;
+    }
+
+    private static boolean shouldRestart(int code) {
+        Termination.Category category = Termination.categoryOf(code);
+        return category != Termination.Category.CLEAN && category != Termination.Category.OPTION_ERROR;
+    }
+
+    private void add(@NonNull Aria2 aria2) {
+        aria2.addListener(forwarder);
+        instances.add(aria2);
+        states.add(new InstanceState(aria2.id()));
+    }
+
+    private void sampleSpeed() {
+        Metrics metrics = Metrics.get();
+        for (Aria2 aria2 : instances) {
+            String instance = String.valueOf(aria2.id());
+            Metrics.Gauge download = metrics.gauge("aria2_download_speed_bytes", "Global download speed in bytes per second.", "instance", instance);
+            Metrics.Gauge upload = metrics.gauge("aria2_upload_speed_bytes", "Global upload speed in bytes per second.", "instance", instance);
+
+            Aria2Rpc rpc = aria2.rpc();
+            if (rpc == null) {
+                download.set(0);
+                upload.set(0);
+                continue;
+            }
+
+            try {
+                Map<String, String> stat = rpc.getGlobalStat();
+                download.set(Long.parseLong(stat.get("downloadSpeed")));
+                upload.set(Long.parseLong(stat.get("uploadSpeed")));
+            } catch (IOException | NumberFormatException ex) {
+                Logger.w(TAG, "Failed collecting speed of instance " + aria2.id(), ex);
+            }
+        }
+    }
+
+    private synchronized void resize(int count) {
+        while (instances.size() < count)
+            add(Aria2.create(instances.size()));
+
+        while (instances.size() > count) {
+            int last = instances.size() - 1;
+            Aria2 aria2 = instances.remove(last);
+            states.remove(last);
+            aria2.stop();
+            aria2.removeListener(forwarder);
+        }
+    }
+
+    public void loadEnv(@NonNull File parent, @NonNull File exec) throws BadEnvironmentException {
+        RuntimeConfig config = Platform.config();
+        resize(Math.max(1, config.instances()));
+
+        List<File> dirs = config.instanceDirectories();
+        for (Aria2 aria2 : instances) {
+            int id = aria2.id();
+            aria2.setOutputDirectory(dirs.isEmpty() ? null : dirs.get(id % dirs.size()));
+            aria2.loadEnv(parent, exec, new File(parent, id == 0 ? "session" : "session-" + id), config);
+        }
+    }
+
+    public void addListener(@NonNull Aria2.MessageListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Aria2.MessageListener listener) {
+        listeners.remove(listener);
+    }
+
+    @NonNull
+    public Subscription subscribe(@NonNull String name, int capacity, @NonNull Subscription.Overflow overflow, @NonNull Aria2.MessageListener listener) {
+        return subscribe(name, capacity, overflow, null, listener);
+    }
+
+    @NonNull
+    public Subscription subscribe(@NonNull String name, int capacity, @NonNull Subscription.Overflow overflow, @Nullable Subscription.KeySelector keys, @NonNull Aria2.MessageListener listener) {
+        Subscription subscription = new Subscription(name, capacity, overflow, keys, listener, this);
+        listeners.add(subscription);
+        return subscription;
+    }
+
+    @NonNull
+    public List<Aria2> instances() {
+        return Collections.unmodifiableList(instances);
+    }
+
+    public int size() {
+        return instances.size();
+    }
+
+    public boolean start() throws BadEnvironmentException, IOException {
+        shouldRun = true;
+
+        RuntimeConfig config = Platform.config();
+        synchronized (this) {
+            if (spaceGuard == null && config.spaceLowWatermark() > 0)
+                spaceGuard = new SpaceGuard(this, config.spaceLowWatermark(), config.spaceHighWatermark());
+        }
+
+        boolean started = false;
+        Exception error = null;
+        for (Aria2 aria2 : instances) {
+            try {
+                if (aria2.start(config)) started = true;
+            } catch (BadEnvironmentException | IOException ex) {
+                Logger.e(TAG, "Failed starting instance " + aria2.id(), ex);
+                if (error == null) error = ex;
+            }
+        }
+
+        if (error instanceof BadEnvironmentException) throw (BadEnvironmentException) error;
+        else if (error != null) throw (IOException) error;
+        return started;
+    }
+
+    public void stop() {
+        shouldRun = false;
+
+        synchronized (this) {
+            if (spaceGuard != null) {
+                spaceGuard.close();
+                spaceGuard = null;
+            }
+        }
+
+        for (Aria2 aria2 : instances) aria2.stop();
+    }
+
+    void publish(@NonNull Message msg) {
+        instances.get(0).post(msg);
+    }
+
+    @WorkerThread
+    public void setLogLevel(@NonNull LogPolicy.Level level) throws IOException {
+        IOException error = null;
+        for (Aria2 aria2 : instances) {
+            try {
+                aria2.setLogLevel(level);
+            } catch (IOException ex) {
+                Logger.w(TAG, "Failed changing log level of instance " + aria2.id(), ex);
+                if (error == null) error = ex;
+            }
+        }
+
+        if (error != null) throw error;
+    }
+
+    public boolean isRunning() {
+        for (Aria2 aria2 : instances)
+            if (aria2.isRunning()) return true;
+
+        return false;
+    }
+
+    public boolean hasEnv() {
+        return instances.get(0).hasEnv();
+    }
+
+    public boolean delete() {
+        boolean ok = true;
+        for (Aria2 aria2 : instances) ok &= aria2.delete();
+        return ok;
+    }
+
+    @NonNull
+    public Status status() {
+        List<InstanceStatus> list = new ArrayList<>(instances.size());
+        for (int i = 0; i < instances.size(); i++) {
+            Aria2 aria2 = instances.get(i);
+            InstanceState state = states.get(i);
+            boolean running = aria2.isRunning();
+            list.add(new InstanceStatus(aria2.id(), running, aria2.pid(), running ? state.cpu : 0, running ? state.rss : 0, state.restarts.size()));
+        }
+
+        return new Status(list);
+    }
+
+    private void scheduleRestart(@NonNull Aria2 aria2, @NonNull InstanceState state) {
+        long now = System.currentTimeMillis();
+        synchronized (state.restarts) {
+            while (!state.restarts.isEmpty() && now - state.restarts.peekFirst() > RESTART_WINDOW)
+                state.restarts.removeFirst();
+
+            if (state.restarts.size() >= MAX_RESTARTS) {
+                Logger.e(TAG, "Instance " + aria2.id() + " keeps crashing, giving up.");
+                return;
+            }
+
+            state.restarts.addLast(now);
+        }
+
+        state.restartsCounter.inc();
+
+        long delay = Math.min(MAX_RESTART_DELAY, 1000L << (state.restarts.size() - 1));
+        Logger.w(TAG, "Restarting instance " + aria2.id() + " in " + delay + "ms.");
+        Scheduler.get().schedule(() -> {
+            if (!shouldRun || aria2.isRunning() || !instances.contains(aria2)) return;
+
+            try {
+                aria2.start();
+            } catch (BadEnvironmentException | IOException ex) {
+                Logger.e(TAG, "Failed restarting instance " + aria2.id(), ex);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void onInstanceMessage(@NonNull Message msg) {
+        int id = msg.instance();
+        if (id >= 0 && id < instances.size()) {
+            Aria2 aria2 = instances.get(id);
+            InstanceState state = states.get(id);
+
+            switch (msg.type()) {
+                case MONITOR_UPDATE:
+                    MonitorUpdate update = (MonitorUpdate) msg.object();
+                    if (update != null) {
+                        state.cpu = update.cpu();
+                        state.rss = update.rss();
+                        state.cpuGauge.set(state.cpu);
+                        state.rssGauge.set(state.rss);
+                        if (update.readRate() >= 0) state.diskReadGauge.set(update.readRate());
+                        if (update.writeRate() >= 0) state.diskWriteGauge.set(update.writeRate());
+                        if (update.rxRate() >= 0) state.netRxGauge.set(update.rxRate());
+                        if (update.txRate() >= 0) state.netTxGauge.set(update.txRate());
+                    }
+                    break;
+                case PROCESS_TERMINATED:
+                    if (shouldRun && !aria2.wasStopRequested() && shouldRestart(msg.integer()))
+                        scheduleRestart(aria2, state);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // Every instance dispatches on its own thread, listeners see one message at a time
+        synchronized (dispatchLock) {
+            SpaceGuard spaceGuard = this.spaceGuard;
+            if (spaceGuard != null) spaceGuard.onMessage(msg);
+
+            for (Aria2.MessageListener listener : listeners)
+                listener.onMessage(msg);
+        }
+    }
+
+    private static class InstanceState {
+        final LinkedList<Long> restarts = new LinkedList<>();
+        final Metrics.Counter restartsCounter;
+        final Metrics.Gauge cpuGauge;
+        final Metrics.Gauge rssGauge;
+        final Metrics.Gauge diskReadGauge;
+        final Metrics.Gauge diskWriteGauge;
+        final Metrics.Gauge netRxGauge;
+        final Metrics.Gauge netTxGauge;
+        volatile float cpu;
+        volatile long rss;
+
+        InstanceState(int id) {
+            String instance = String.valueOf(id);
+            Metrics metrics = Metrics.get();
+            restartsCounter = metrics.counter("aria2_restarts_total", "Automatic restarts after a crash.", "instance", instance);
+            cpuGauge = metrics.gauge("aria2_cpu_percent", "CPU usage of aria2c as reported by top.", "instance", instance);
+            rssGauge = metrics.gauge("aria2_rss_bytes", "Resident memory of aria2c.", "instance", instance);
+            diskReadGauge = metrics.gauge("aria2_disk_read_bytes_per_second", "Storage reads of aria2c from /proc/<pid>/io.", "instance", instance);
+            diskWriteGauge = metrics.gauge("aria2_disk_write_bytes_per_second", "Storage writes of aria2c from /proc/<pid>/io.", "instance", instance);
+            netRxGauge = metrics.gauge("aria2_net_receive_bytes_per_second", "Traffic received on non-loopback interfaces from /proc/<pid>/net/dev.", "instance", instance);
+            netTxGauge = metrics.gauge("aria2_net_transmit_bytes_per_second", "Traffic sent on non-loopback interfaces from /proc/<pid>/net/dev.", "instance", instance);
+        }
+    }
+
+    public static class InstanceStatus {
+        public final int id;
+        public final boolean running;
+        public final int pid;
+        public final float cpu;
+        public final long rss;
+        public final int restarts;
+
+        InstanceStatus(int id, boolean running, int pid, float cpu, long rss, int restarts) {
+            this.id = id;
+            this.running = running;
+            this.pid = pid;
+            this.cpu = cpu;
+            this.rss = rss;
+            this.restarts = restarts;
+        }
+    }
+
+    public static class Status {
+        public final List<InstanceStatus> instances;
+        public final int running;
+        public final float cpu;
+        public final long rss;
+
+        Status(@NonNull List<InstanceStatus> instances) {
+            this.instances = Collections.unmodifiableList(instances);
+
+            int running = 0;
+            float cpu = 0;
+            long rss = 0;
+            for (InstanceStatus status : instances) {
+                if (status.running) running++;
+                cpu += status.cpu;
+                rss += status.rss;
+            }
+
+            this.running = running;
+            this.cpu = cpu;
+            this.rss = rss;
+        }
+    }
+}
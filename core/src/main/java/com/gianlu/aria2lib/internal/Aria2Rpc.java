@@ -0,0 +1,217 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class Aria2Rpc {
+    private static final int TIMEOUT = 5000;
+    private final URL url;
+    private final String token;
+    private final AtomicLong ids = new AtomicLong(0);
+
+    Aria2Rpc(int port, @Nullable String token) throws IOException {
+        this.url = new URL("http", "127.0.0.1", port, "/jsonrpc");
+        this.token = token == null || token.isEmpty() ? null : "token:" + token;
+    }
+
+    @NonNull
+    private static String readAll(@NonNull InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        return out.toString("UTF-8");
+    }
+
+    @NonNull
+    private static Map<String, String> toMap(@NonNull JSONObject obj) throws JSONException {
+        Map<String, String> map = new HashMap<>(obj.length());
+        Iterator<String> iterator = obj.keys();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            map.put(key, String.valueOf(obj.get(key))); // Nested values (files, bittorrent) as JSON text
+        }
+
+        return map;
+    }
+
+    @NonNull
+    public Object call(@NonNull String method, Object... params) throws IOException {
+        JSONObject request = new JSONObject();
+        JSONArray array = new JSONArray();
+        try {
+            if (token != null) array.put(token);
+            for (Object param : params) array.put(param);
+
+            request.put("jsonrpc", "2.0");
+            request.put("id", String.valueOf(ids.incrementAndGet()));
+            request.put("method", method);
+            request.put("params", array);
+        } catch (JSONException ex) {
+            throw new IOException(ex);
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        try {
+            conn.setConnectTimeout(TIMEOUT);
+            conn.setReadTimeout(TIMEOUT);
+            conn.setDoOutput(true);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", "application/json");
+
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(request.toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+            InputStream in = conn.getResponseCode() >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            if (in == null) throw new IOException("Empty response, code: " + conn.getResponseCode());
+
+            JSONObject response;
+            try {
+                response = new JSONObject(readAll(in));
+            } finally {
+                in.close();
+            }
+
+            JSONObject error = response.optJSONObject("error");
+            if (error != null)
+                throw new RpcException(error.optInt("code", -1), error.optString("message"));
+
+            Object result = response.get("result");
+            failed = false;
+            return result;
+        } catch (JSONException ex) {
+            throw new IOException("Invalid response for " + method, ex);
+        } finally {
+            conn.disconnect();
+
+            Metrics metrics = Metrics.get();
+            metrics.summary("aria2_rpc_call_seconds", "Latency of JSON-RPC calls to aria2c.", "method", method).observeNanos(System.nanoTime() - start);
+            if (failed) metrics.counter("aria2_rpc_errors_total", "Failed JSON-RPC calls to aria2c.", "method", method).inc();
+        }
+    }
+
+    @NonNull
+    public Map<String, String> getGlobalOption() throws IOException {
+        try {
+            return toMap((JSONObject) call("aria2.getGlobalOption"));
+        } catch (JSONException | ClassCastException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    public void changeGlobalOption(@NonNull Map<String, String> options) throws IOException {
+        call("aria2.changeGlobalOption", new JSONObject(options));
+    }
+
+    @NonNull
+    public Map<String, String> getGlobalStat() throws IOException {
+        try {
+            return toMap((JSONObject) call("aria2.getGlobalStat"));
+        } catch (JSONException | ClassCastException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @NonNull
+    public String addUri(@NonNull List<String> uris, @NonNull Map<String, String> options) throws IOException {
+        return (String) call("aria2.addUri", new JSONArray(uris), new JSONObject(options));
+    }
+
+    @NonNull
+    public String addTorrent(@NonNull byte[] torrent, @NonNull List<String> uris, @NonNull Map<String, String> options) throws IOException {
+        return (String) call("aria2.addTorrent", Base64Codec.encode(torrent), new JSONArray(uris), new JSONObject(options));
+    }
+
+    @NonNull
+    public List<String> addMetalink(@NonNull byte[] metalink, @NonNull Map<String, String> options) throws IOException {
+        JSONArray array = (JSONArray) call("aria2.addMetalink", Base64Codec.encode(metalink), new JSONObject(options));
+        List<String> gids = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) gids.add(array.optString(i));
+        return gids;
+    }
+
+    @NonNull
+    public List<Map<String, String>> tellActive(@NonNull String... keys) throws IOException {
+        return toMapList((JSONArray) call("aria2.tellActive", new JSONArray(Arrays.asList(keys))));
+    }
+
+    public void changeOption(@NonNull String gid, @NonNull Map<String, String> options) throws IOException {
+        call("aria2.changeOption", gid, new JSONObject(options));
+    }
+
+    @NonNull
+    public Map<String, String> tellStatus(@NonNull String gid, @NonNull String... keys) throws IOException {
+        try {
+            return toMap((JSONObject) call("aria2.tellStatus", gid, new JSONArray(Arrays.asList(keys))));
+        } catch (JSONException | ClassCastException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @NonNull
+    public List<Map<String, String>> tellWaiting(int offset, int num, @NonNull String... keys) throws IOException {
+        return toMapList((JSONArray) call("aria2.tellWaiting", offset, num, new JSONArray(Arrays.asList(keys))));
+    }
+
+    public int changePosition(@NonNull String gid, int pos, @NonNull String how) throws IOException {
+        return ((Number) call("aria2.changePosition", gid, pos, how)).intValue();
+    }
+
+    public void pause(@NonNull String gid) throws IOException {
+        call("aria2.pause", gid);
+    }
+
+    public void unpause(@NonNull String gid) throws IOException {
+        call("aria2.unpause", gid);
+    }
+
+    public void pauseAll() throws IOException {
+        call("aria2.pauseAll");
+    }
+
+    public void unpauseAll() throws IOException {
+        call("aria2.unpauseAll");
+    }
+
+    @NonNull
+    private static List<Map<String, String>> toMapList(@NonNull JSONArray array) throws IOException {
+        try {
+            List<Map<String, String>> list = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) list.add(toMap(array.getJSONObject(i)));
+            return list;
+        } catch (JSONException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    public static class RpcException extends IOException {
+        public final int code;
+
+        RpcException(int code, String message) {
+            super(message + " (" + code + ")");
+            this.code = code;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+final class Base64Codec {
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private Base64Codec() {
+    }
+
+    @NonNull
+    static String encode(@NonNull byte[] data) {
+        return encode(data, 0);
+    }
+
+    @NonNull
+    static String encode(@NonNull byte[] data, int lineLength) {
+        StringBuilder builder = new StringBuilder((data.length + 2) / 3 * 4 + (lineLength > 0 ? data.length / lineLength + 1 : 0));
+        int column = 0;
+        for (int i = 0; i < data.length; i += 3) {
+            int b = (data[i] & 0xFF) << 16;
+            if (i + 1 < data.length) b |= (data[i + 1] & 0xFF) << 8;
+            if (i + 2 < data.length) b |= data[i + 2] & 0xFF;
+
+            builder.append(ALPHABET[(b >> 18) & 0x3F]).append(ALPHABET[(b >> 12) & 0x3F])
+                    .append(i + 1 < data.length ? ALPHABET[(b >> 6) & 0x3F] : '=')
+                    .append(i + 2 < data.length ? ALPHABET[b & 0x3F] : '=');
+
+            column += 4;
+            if (lineLength > 0 && column >= lineLength) {
+                builder.append('\n');
+                column = 0;
+            }
+        }
+
+        if (lineLength > 0 && column > 0) builder.append('\n');
+        return builder.toString();
+    }
+}
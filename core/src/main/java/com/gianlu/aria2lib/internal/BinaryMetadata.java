@@ -0,0 +1,207 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+public final class BinaryMetadata implements Serializable {
+    private static final String TAG = BinaryMetadata.class.getSimpleName();
+    private static final String STORE_NAME = "aria2c-metadata.json";
+    private static final Object lock = new Object();
+    private static BinaryMetadata cached;
+    private static boolean probing = false;
+    public final String path;
+    public final long size;
+    public final long modified;
+    public final String version;
+    public final String versionLine;
+    public final List<String> features;
+    public final List<String> hashAlgorithms;
+    public final List<String> libraries;
+    public final List<String> protocols;
+
+    private BinaryMetadata(@NonNull String path, long size, long modified, @NonNull String version, @NonNull String versionLine,
+                           @NonNull List<String> features, @NonNull List<String> hashAlgorithms, @NonNull List<String> libraries) {
+        this.path = path;
+        this.size = size;
+        this.modified = modified;
+        this.version = version;
+        this.versionLine = versionLine;
+        this.features = Collections.unmodifiableList(features);
+        this.hashAlgorithms = Collections.unmodifiableList(hashAlgorithms);
+        this.libraries = Collections.unmodifiableList(libraries);
+        this.protocols = Collections.unmodifiableList(protocolsOf(features));
+    }
+
+    @NonNull
+    private static List<String> protocolsOf(@NonNull List<String> features) {
+        List<String> protocols = new ArrayList<>();
+        protocols.add("http");
+        if (features.contains("HTTPS")) protocols.add("https");
+        protocols.add("ftp");
+        if (features.contains("HTTPS")) protocols.add("ftps");
+        if (features.contains("SFTP")) protocols.add("sftp");
+        if (features.contains("BitTorrent")) protocols.add("bittorrent");
+        if (features.contains("Metalink")) protocols.add("metalink");
+        return protocols;
+    }
+
+    @NonNull
+    private static List<String> split(@NonNull String value, @NonNull String separator) {
+        List<String> list = new ArrayList<>();
+        for (String item : value.split(separator)) {
+            item = item.trim();
+            if (!item.isEmpty()) list.add(item);
+        }
+
+        return list;
+    }
+
+    @NonNull
+    static BinaryMetadata parse(@NonNull File exec, @NonNull List<String> lines) {
+        String versionLine = lines.isEmpty() ? "" : lines.get(0).trim();
+        String version = versionLine;
+        int space = versionLine.lastIndexOf(' ');
+        if (versionLine.toLowerCase(Locale.ROOT).startsWith("aria2 version ") && space != -1)
+            version = versionLine.substring(space + 1);
+
+        List<String> features = new ArrayList<>();
+        List<String> hashAlgorithms = new ArrayList<>();
+        List<String> libraries = new ArrayList<>();
+        for (String line : lines) {
+            if (line.startsWith("Enabled Features:")) features = split(line.substring(17), ",");
+            else if (line.startsWith("Hash Algorithms:")) hashAlgorithms = split(line.substring(16), ",");
+            else if (line.startsWith("Libraries:")) libraries = split(line.substring(10), " ");
+        }
+
+        return new BinaryMetadata(exec.getAbsolutePath(), exec.length(), exec.lastModified(), version, versionLine, features, hashAlgorithms, libraries);
+    }
+
+    private static boolean matches(@Nullable BinaryMetadata metadata, @NonNull File exec) {
+        return metadata != null && metadata.path.equals(exec.getAbsolutePath()) && metadata.size == exec.length() && metadata.modified == exec.lastModified();
+    }
+
+    @Nullable
+    public static BinaryMetadata cached(@NonNull File exec, @NonNull File stateDir) {
+        synchronized (lock) {
+            if (cached == null) cached = load(stateDir);
+            return matches(cached, exec) ? cached : null;
+        }
+    }
+
+    @NonNull
+    @WorkerThread
+    public static BinaryMetadata get(@NonNull File exec, @NonNull File stateDir) throws IOException {
+        BinaryMetadata metadata = cached(exec, stateDir);
+        return metadata == null ? probe(exec, stateDir) : metadata;
+    }
+
+    static void refresh(@NonNull File exec, @NonNull File stateDir) {
+        synchronized (lock) {
+            if (probing || matches(cached, exec)) return;
+            probing = true;
+        }
+
+        Scheduler.get().runBlocking("aria2-metadataProbe", () -> {
+            try {
+                if (cached(exec, stateDir) == null) Logger.i(TAG, probe(exec, stateDir).toString());
+            } catch (IOException ex) {
+                Logger.w(TAG, "Failed probing " + exec, ex);
+            } finally {
+                synchronized (lock) {
+                    probing = false;
+                }
+            }
+        });
+    }
+
+    @NonNull
+    @WorkerThread
+    private static BinaryMetadata probe(@NonNull File exec, @NonNull File stateDir) throws IOException {
+        Process process = new ProcessBuilder(exec.getAbsolutePath(), "-v").redirectErrorStream(true).start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) lines.add(line);
+        } finally {
+            process.destroy();
+        }
+
+        BinaryMetadata metadata = parse(exec, lines);
+        synchronized (lock) {
+            cached = metadata;
+            save(stateDir, metadata);
+        }
+
+        return metadata;
+    }
+
+    @Nullable
+    private static BinaryMetadata load(@NonNull File stateDir) {
+        File store = new File(stateDir, STORE_NAME);
+        if (!store.exists()) return null;
+
+        StringBuilder builder = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(store), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) builder.append(line);
+
+            JSONObject obj = new JSONObject(builder.toString());
+            return new BinaryMetadata(obj.getString("path"), obj.getLong("size"), obj.getLong("modified"), obj.getString("version"), obj.getString("versionLine"),
+                    toList(obj.getJSONArray("features")), toList(obj.getJSONArray("hashAlgorithms")), toList(obj.getJSONArray("libraries")));
+        } catch (IOException | JSONException ex) {
+            Logger.w(TAG, "Failed loading binary metadata.", ex);
+            return null;
+        }
+    }
+
+    private static void save(@NonNull File stateDir, @NonNull BinaryMetadata metadata) {
+        try {
+            JSONObject obj = new JSONObject();
+            obj.put("path", metadata.path);
+            obj.put("size", metadata.size);
+            obj.put("modified", metadata.modified);
+            obj.put("version", metadata.version);
+            obj.put("versionLine", metadata.versionLine);
+            obj.put("features", new JSONArray(metadata.features));
+            obj.put("hashAlgorithms", new JSONArray(metadata.hashAlgorithms));
+            obj.put("libraries", new JSONArray(metadata.libraries));
+
+            try (FileOutputStream out = new FileOutputStream(new File(stateDir, STORE_NAME))) {
+                out.write(obj.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException | JSONException ex) {
+            Logger.w(TAG, "Failed saving binary metadata.", ex);
+        }
+    }
+
+    @NonNull
+    private static List<String> toList(@NonNull JSONArray array) throws JSONException {
+        List<String> list = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) list.add(array.getString(i));
+        return list;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "BinaryMetadata{version=" + version + ", features=" + features + ", hashAlgorithms=" + hashAlgorithms + ", libraries=" + libraries + ", protocols=" + protocols + '}';
+    }
+}
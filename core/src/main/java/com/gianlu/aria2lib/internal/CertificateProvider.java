@@ -0,0 +1,13 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+import java.util.List;
+
+public interface CertificateProvider {
+    @NonNull
+    List<Certificate> certificates() throws GeneralSecurityException, IOException;
+}
@@ -0,0 +1,34 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+
+final class CommandLine {
+
+    private CommandLine() {
+    }
+
+    @NonNull
+    static String[] args(@NonNull Map<String, String> params) {
+        String[] args = new String[params.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            if (entry.getValue() == null || entry.getValue().isEmpty())
+                args[i] = entry.getKey();
+            else
+                args[i] = entry.getKey() + "=" + entry.getValue();
+
+            i++;
+        }
+
+        return args;
+    }
+
+    @NonNull
+    static String forLog(@NonNull String exec, @NonNull String... params) {
+        StringBuilder builder = new StringBuilder(exec);
+        for (String param : params) builder.append(' ').append(param);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public final class ConfigFile {
+
+    private ConfigFile() {
+    }
+
+    @NonNull
+    public static List<Map.Entry<String, String>> parse(@NonNull String str) {
+        List<Map.Entry<String, String>> list = new ArrayList<>();
+        String[] lines = str.split("\n");
+        for (String line : lines) {
+            line = line.trim();
+            if (line.startsWith("#")) continue;
+            String[] split = line.split("=");
+            if (split.length > 0)
+                list.add(new AbstractMap.SimpleImmutableEntry<>(split[0], split.length == 1 ? null : split[1]));
+        }
+
+        return list;
+    }
+}
@@ -0,0 +1,57 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+public interface ConfigProvider {
+    int rpcPort();
+
+    @Nullable
+    String rpcToken();
+
+    boolean rpcListenAll();
+
+    boolean rpcAllowOriginAll();
+
+    boolean checkCertificate();
+
+    boolean saveSession();
+
+    boolean showPerformance();
+
+    int monitorDelay();
+
+    @NonNull
+    String logLevel();
+
+    int summaryInterval();
+
+    boolean storageTuning();
+
+    long spaceLowWatermark();
+
+    long spaceHighWatermark();
+
+    @NonNull
+    String outputDirectory();
+
+    @NonNull
+    Map<String, String> customOptions();
+
+    int instances();
+
+    @NonNull
+    List<File> instanceDirectories();
+
+    int metricsPort();
+
+    boolean autoTuning();
+
+    boolean memoryGovernor();
+
+    boolean broadcastMessages();
+}
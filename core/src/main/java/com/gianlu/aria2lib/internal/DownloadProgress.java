@@ -0,0 +1,42 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.io.Serializable;
+
+public final class DownloadProgress implements Serializable {
+    public static final int UNKNOWN = -1;
+    public final String gid;
+    public final long completed;
+    public final long total;
+    public final int connections;
+    public final int seeders;
+    public final long downloadSpeed;
+    public final long uploadSpeed;
+    public final long eta;
+    public final boolean seeding;
+
+    DownloadProgress(@NonNull String gid, long completed, long total, int connections, int seeders, long downloadSpeed, long uploadSpeed, long eta, boolean seeding) {
+        this.gid = gid;
+        this.completed = completed;
+        this.total = total;
+        this.connections = connections;
+        this.seeders = seeders;
+        this.downloadSpeed = downloadSpeed;
+        this.uploadSpeed = uploadSpeed;
+        this.eta = eta;
+        this.seeding = seeding;
+    }
+
+    public float percentage() {
+        if (total <= 0 || completed < 0) return UNKNOWN;
+        else return completed * 100f / total;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "DownloadProgress{gid=" + gid + ", completed=" + completed + ", total=" + total + ", connections=" + connections + ", seeders=" + seeders
+                + ", downloadSpeed=" + downloadSpeed + ", uploadSpeed=" + uploadSpeed + ", eta=" + eta + ", seeding=" + seeding + '}';
+    }
+}
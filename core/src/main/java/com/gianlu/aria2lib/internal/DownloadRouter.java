@@ -0,0 +1,415 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public final class DownloadRouter {
+    private static final String TAG = DownloadRouter.class.getSimpleName();
+    private static final int MAX_ASSIGNMENTS = 4096;
+    private static final long LOAD_CACHE_MS = 2000;
+    private static final float LOAD_FACTOR = 1.25f;
+    private static final float MAX_CPU = 90;
+    private static final int MAX_WAITING = 1000;
+    private final Aria2Cluster cluster;
+    private final Map<String, Integer> assignments = new LinkedHashMap<String, Integer>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_ASSIGNMENTS;
+        }
+    };
+    private final Map<Integer, Load> loads = new LinkedHashMap<>();
+    private final Map<String, KeyLock> keyLocks = new HashMap<>();
+
+    public DownloadRouter(@NonNull Aria2Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    private static long score(@NonNull String key, int id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        h ^= id;
+        h *= 0x100000001b3L;
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    private static boolean sameVolume(@Nullable String instanceDir, @NonNull String dir) {
+        if (instanceDir == null) return false;
+
+        String a = new File(instanceDir).getAbsolutePath();
+        String b = new File(dir).getAbsolutePath();
+        return b.equals(a) || b.startsWith(a + File.separator) || a.startsWith(b + File.separator);
+    }
+
+    @NonNull
+    static String uriKey(@NonNull String uri) {
+        String str = uri.trim();
+        if (str.regionMatches(true, 0, "magnet:", 0, 7)) {
+            String hash = magnetInfoHash(str);
+            if (hash != null) return "btih:" + hash;
+        }
+
+        int fragment = str.indexOf('#');
+        if (fragment != -1) str = str.substring(0, fragment);
+        return "uri:" + str;
+    }
+
+    @Nullable
+    private static String magnetInfoHash(@NonNull String magnet) {
+        int index = magnet.toLowerCase(Locale.ROOT).indexOf("xt=urn:btih:");
+        if (index == -1) return null;
+
+        int start = index + 12;
+        int end = start;
+        while (end < magnet.length() && magnet.charAt(end) != '&') end++;
+
+        String hash = magnet.substring(start, end);
+        if (hash.length() == 40) return hash.toLowerCase(Locale.ROOT);
+        else if (hash.length() == 32) return base32ToHex(hash);
+        else return null;
+    }
+
+    @Nullable
+    private static String base32ToHex(@NonNull String str) {
+        byte[] out = new byte[20];
+        int buffer = 0, bits = 0, index = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char c = Character.toUpperCase(str.charAt(i));
+            int val;
+            if (c >= 'A' && c <= 'Z') val = c - 'A';
+            else if (c >= '2' && c <= '7') val = c - '2' + 26;
+            else return null;
+
+            buffer = (buffer << 5) | val;
+            bits += 5;
+            if (bits >= 8) {
+                out[index++] = (byte) (buffer >> (bits - 8));
+                bits -= 8;
+            }
+        }
+
+        return toHex(out);
+    }
+
+    @NonNull
+    private static String toHex(@NonNull byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) builder.append(String.format("%02x", b & 0xFF));
+        return builder.toString();
+    }
+
+    @NonNull
+    private static byte[] sha1(@NonNull byte[] data, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(data, offset, length);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static int skipBencode(@NonNull byte[] data, int pos) throws IOException {
+        if (pos >= data.length) throw new IOException("Truncated torrent!");
+
+        byte b = data[pos];
+        if (b == 'i') {
+            while (data[pos] != 'e') pos++;
+            return pos + 1;
+        } else if (b == 'l' || b == 'd') {
+            pos++;
+            while (data[pos] != 'e') pos = skipBencode(data, pos);
+            return pos + 1;
+        } else if (b >= '0' && b <= '9') {
+            int len = 0;
+            while (data[pos] != ':') len = len * 10 + (data[pos++] - '0');
+            return pos + 1 + len;
+        } else {
+            throw new IOException("Invalid bencode at " + pos);
+        }
+    }
+
+    @NonNull
+    static String torrentKey(@NonNull byte[] torrent) throws IOException {
+        try {
+            if (torrent.length == 0 || torrent[0] != 'd') throw new IOException("Not a torrent!");
+
+            int pos = 1;
+            while (torrent[pos] != 'e') {
+                int keyStart = pos;
+                pos = skipBencode(torrent, pos);
+                String key = new String(torrent, keyStart, pos - keyStart, StandardCharsets.US_ASCII);
+
+                int valueStart = pos;
+                pos = skipBencode(torrent, pos);
+                if (key.equals("4:info"))
+                    return "btih:" + toHex(sha1(torrent, valueStart, pos - valueStart));
+            }
+
+            throw new IOException("Missing info dictionary!");
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Truncated torrent!", ex);
+        }
+    }
+
+    @NonNull
+    static String metalinkKey(@NonNull byte[] metalink) {
+        return "metalink:" + toHex(sha1(metalink, 0, metalink.length));
+    }
+
+    private static boolean matches(@NonNull String key, @NonNull Map<String, String> download) {
+        if (key.startsWith("btih:")) return key.substring(5).equalsIgnoreCase(download.get("infoHash"));
+        if (!key.startsWith("uri:")) return false;
+
+        String files = download.get("files");
+        if (files == null) return false;
+
+        try {
+            JSONArray array = new JSONArray(files);
+            for (int i = 0; i < array.length(); i++) {
+                JSONArray uris = array.getJSONObject(i).optJSONArray("uris");
+                if (uris == null) continue;
+
+                for (int j = 0; j < uris.length(); j++) {
+                    JSONObject uri = uris.optJSONObject(j);
+                    if (uri != null && key.equals(uriKey(uri.optString("uri")))) return true;
+                }
+            }
+        } catch (JSONException ex) {
+            Logger.w(TAG, "Failed parsing files of " + download.get("gid"), ex);
+        }
+
+        return false;
+    }
+
+    @Nullable
+    @WorkerThread
+    private Aria2 existing(@NonNull String key, @NonNull List<Aria2> instances) {
+        String[] keys;
+        if (key.startsWith("btih:")) keys = new String[]{"gid", "infoHash"};
+        else if (key.startsWith("uri:")) keys = new String[]{"gid", "files"};
+        else return null;
+
+        for (Aria2 aria2 : instances) {
+            Aria2Rpc rpc = aria2.rpc();
+            if (rpc == null || !aria2.isRunning()) continue;
+
+            try {
+                for (Map<String, String> download : rpc.tellActive(keys))
+                    if (matches(key, download)) return aria2;
+
+                for (Map<String, String> download : rpc.tellWaiting(0, MAX_WAITING, keys))
+                    if (matches(key, download)) return aria2;
+            } catch (IOException ex) {
+                Logger.w(TAG, "Failed looking up downloads of instance " + aria2.id(), ex);
+            }
+        }
+
+        return null;
+    }
+
+    @WorkerThread
+    private int load(@NonNull Aria2 aria2) {
+        long now = System.currentTimeMillis();
+        synchronized (loads) {
+            Load load = loads.get(aria2.id());
+            if (load != null && now - load.time < LOAD_CACHE_MS) return load.active;
+        }
+
+        int active;
+        Aria2Rpc rpc = aria2.rpc();
+        if (rpc == null) {
+            active = Integer.MAX_VALUE;
+        } else {
+            try {
+                Map<String, String> stat = rpc.getGlobalStat();
+                active = Integer.parseInt(stat.get("numActive")) + Integer.parseInt(stat.get("numWaiting"));
+            } catch (IOException | NumberFormatException ex) {
+                Logger.w(TAG, "Failed getting load of instance " + aria2.id(), ex);
+                active = Integer.MAX_VALUE;
+            }
+        }
+
+        synchronized (loads) {
+            loads.put(aria2.id(), new Load(active, now));
+        }
+
+        return active;
+    }
+
+    @NonNull
+    @WorkerThread
+    public Aria2 route(@NonNull String key, @Nullable String dir) throws IOException {
+        // Only submissions of the same key must agree, the others don't wait on their lookups
+        KeyLock lock = acquire(key);
+        try {
+            synchronized (lock) {
+                List<Aria2> instances = cluster.instances();
+                synchronized (assignments) {
+                    Integer assigned = assignments.get(key);
+                    if (assigned != null && assigned < instances.size() && instances.get(assigned).isRunning())
+                        return instances.get(assigned);
+                }
+
+                // Assignments are lost on eviction and restart, the sessions still know where the download is
+                Aria2 chosen = existing(key, instances);
+                if (chosen == null) chosen = choose(key, dir, instances);
+
+                synchronized (assignments) {
+                    assignments.put(key, chosen.id());
+                }
+
+                return chosen;
+            }
+        } finally {
+            release(key, lock);
+        }
+    }
+
+    @NonNull
+    private KeyLock acquire(@NonNull String key) {
+        synchronized (keyLocks) {
+            KeyLock lock = keyLocks.get(key);
+            if (lock == null) keyLocks.put(key, lock = new KeyLock());
+            lock.users++;
+            return lock;
+        }
+    }
+
+    private void release(@NonNull String key, @NonNull KeyLock lock) {
+        synchronized (keyLocks) {
+            if (--lock.users == 0) keyLocks.remove(key);
+        }
+    }
+
+    @NonNull
+    @WorkerThread
+    private Aria2 choose(@NonNull String key, @Nullable String dir, @NonNull List<Aria2> instances) throws IOException {
+        List<Aria2> eligible = new ArrayList<>();
+        for (Aria2 aria2 : instances) {
+            if (!aria2.isRunning()) continue;
+            if (dir == null || sameVolume(aria2.outputDirectory(), dir)) eligible.add(aria2);
+        }
+
+        if (eligible.isEmpty() && dir != null) {
+            for (Aria2 aria2 : instances)
+                if (aria2.isRunning()) eligible.add(aria2);
+        }
+
+        if (eligible.isEmpty()) throw new IOException("No running instance!");
+
+        Collections.sort(eligible, (a, b) -> Long.compare(score(key, b.id()), score(key, a.id())));
+
+        int[] active = new int[eligible.size()];
+        long total = 0;
+        int known = 0;
+        for (int i = 0; i < eligible.size(); i++) {
+            active[i] = load(eligible.get(i));
+            if (active[i] != Integer.MAX_VALUE) {
+                total += active[i];
+                known++;
+            }
+        }
+
+        Aria2 chosen = eligible.get(0);
+        if (known > 0) {
+            Aria2Cluster.Status status = cluster.status();
+            int capacity = (int) Math.ceil((total + 1) / (float) known * LOAD_FACTOR);
+            for (int i = 0; i < eligible.size(); i++) {
+                Aria2 aria2 = eligible.get(i);
+                if (active[i] >= capacity) continue;
+
+                Aria2Cluster.InstanceStatus instance = status.instances.get(aria2.id());
+                if (instance.cpu >= MAX_CPU) continue;
+
+                chosen = aria2;
+                break;
+            }
+        }
+
+        synchronized (loads) {
+            Load load = loads.get(chosen.id());
+            if (load != null && load.active != Integer.MAX_VALUE) load.active++;
+        }
+
+        return chosen;
+    }
+
+    @NonNull
+    @WorkerThread
+    public Routed addUri(@NonNull List<String> uris, @NonNull Map<String, String> options) throws IOException {
+        if (uris.isEmpty()) throw new IllegalArgumentException("No URIs!");
+
+        Aria2 aria2 = route(uriKey(uris.get(0)), options.get("dir"));
+        return new Routed(aria2.id(), Collections.singletonList(rpc(aria2).addUri(uris, options)));
+    }
+
+    @NonNull
+    @WorkerThread
+    public Routed addTorrent(@NonNull byte[] torrent, @NonNull List<String> uris, @NonNull Map<String, String> options) throws IOException {
+        Aria2 aria2 = route(torrentKey(torrent), options.get("dir"));
+        return new Routed(aria2.id(), Collections.singletonList(rpc(aria2).addTorrent(torrent, uris, options)));
+    }
+
+    @NonNull
+    @WorkerThread
+    public Routed addMetalink(@NonNull byte[] metalink, @NonNull Map<String, String> options) throws IOException {
+        Aria2 aria2 = route(metalinkKey(metalink), options.get("dir"));
+        return new Routed(aria2.id(), rpc(aria2).addMetalink(metalink, options));
+    }
+
+    @NonNull
+    private Aria2Rpc rpc(@NonNull Aria2 aria2) throws IOException {
+        Aria2Rpc rpc = aria2.rpc();
+        if (rpc == null) throw new IOException("Instance " + aria2.id() + " is not running!");
+        return rpc;
+    }
+
+    private static class KeyLock {
+        int users = 0;
+    }
+
+    private static class Load {
+        final long time;
+        int active;
+
+        Load(int active, long time) {
+            this.active = active;
+            this.time = time;
+        }
+    }
+
+    public static class Routed {
+        public final int instance;
+        public final List<String> gids;
+
+        Routed(int instance, @NonNull List<String> gids) {
+            this.instance = instance;
+            this.gids = Collections.unmodifiableList(gids);
+        }
+    }
+}
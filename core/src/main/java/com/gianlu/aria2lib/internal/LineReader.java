@@ -0,0 +1,65 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+final class LineReader {
+    private static final int INITIAL_SIZE = 8 * 1024;
+    private static final int MAX_LINE = 64 * 1024;
+
+    private LineReader() {
+    }
+
+    static void read(@NonNull InputStream in, @NonNull Callback callback) throws IOException {
+        byte[] buf = new byte[INITIAL_SIZE];
+        int start = 0;
+        int end = 0;
+        boolean skipping = false;
+
+        int read;
+        while ((read = in.read(buf, end, buf.length - end)) != -1) {
+            int scan = end;
+            end += read;
+
+            for (int i = scan; i < end; i++) {
+                if (buf[i] != '\n') continue;
+
+                if (!skipping) deliver(callback, buf, start, i);
+                skipping = false;
+                start = i + 1;
+            }
+
+            if (start == end) {
+                start = end = 0;
+            } else if (end == buf.length) {
+                int pending = end - start;
+                if (pending >= MAX_LINE) {
+                    if (!skipping) deliver(callback, buf, start, end);
+                    skipping = true;
+                    start = end = 0;
+                } else if (start > 0) {
+                    System.arraycopy(buf, start, buf, 0, pending);
+                    start = 0;
+                    end = pending;
+                } else {
+                    byte[] grown = new byte[Math.min(MAX_LINE, buf.length * 2)];
+                    System.arraycopy(buf, 0, grown, 0, end);
+                    buf = grown;
+                }
+            }
+        }
+
+        if (end > start && !skipping) deliver(callback, buf, start, end);
+    }
+
+    private static void deliver(@NonNull Callback callback, @NonNull byte[] buf, int start, int end) {
+        if (end > start && buf[end - 1] == '\r') end--;
+        if (end > start) callback.onLine(buf, start, end - start);
+    }
+
+    interface Callback {
+        void onLine(@NonNull byte[] buf, int off, int len);
+    }
+}
@@ -0,0 +1,182 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public final class LogPolicy {
+    static final long SAMPLE_WINDOW = TimeUnit.SECONDS.toNanos(10);
+    private static final int MAX_SAMPLED_KEYS = 256;
+    private static final int MAX_KEY_LENGTH = 160;
+    private static final int TAG_SEARCH = 48;
+    private final Map<String, Sample> samples = new LinkedHashMap<>(16, 0.75f, true);
+    private final Metrics.Counter levelDropped;
+    private final Metrics.Counter sampledDropped;
+    private volatile Level threshold;
+    private volatile boolean logOnStdout = false;
+
+    LogPolicy(@NonNull String instance, @NonNull Level threshold) {
+        this.threshold = threshold;
+
+        Metrics metrics = Metrics.get();
+        levelDropped = metrics.counter("aria2_log_lines_dropped_total", "aria2c lines dropped by the log policy.", "instance", instance, "reason", "level");
+        sampledDropped = metrics.counter("aria2_log_lines_dropped_total", "aria2c lines dropped by the log policy.", "instance", instance, "reason", "sampled");
+    }
+
+    private static boolean isConsoleRecord(@NonNull byte[] buf, int off, int len) {
+        return len > 5 && buf[off] >= '0' && buf[off] <= '9' && buf[off + 2] == '/' && buf[off + 5] == ' ';
+    }
+
+    @Nullable
+    static Level levelOf(@NonNull byte[] buf, int off, int len) {
+        int end = off + Math.min(len, TAG_SEARCH);
+        for (int i = off; i < end; i++) {
+            if (buf[i] != '[') continue;
+
+            for (Level level : Level.VALUES)
+                if (level.matches(buf, i + 1, off + len)) return level;
+
+            return null;
+        }
+
+        return null;
+    }
+
+    @NonNull
+    private static String key(@NonNull String text) {
+        StringBuilder builder = new StringBuilder(Math.min(text.length(), MAX_KEY_LENGTH));
+        boolean digits = false;
+        for (int i = 0; i < text.length() && builder.length() < MAX_KEY_LENGTH; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (!digits) builder.append('#');
+                digits = true;
+            } else {
+                builder.append(c);
+                digits = false;
+            }
+        }
+
+        return builder.toString();
+    }
+
+    @NonNull
+    private static Message summary(@NonNull Sample sample) {
+        return Message.obtain(sample.type, sample.last + " (repeated " + sample.suppressed + " more times in " + TimeUnit.NANOSECONDS.toSeconds(SAMPLE_WINDOW) + "s)");
+    }
+
+    @NonNull
+    public Level threshold() {
+        return threshold;
+    }
+
+    void threshold(@NonNull Level threshold) {
+        this.threshold = threshold;
+    }
+
+    void logOnStdout(boolean logOnStdout) {
+        this.logOnStdout = logOnStdout;
+    }
+
+    boolean accept(@NonNull byte[] buf, int off, int len) {
+        Level level = levelOf(buf, off, len);
+        if (level == null) return true;
+
+        if (level.ordinal() < threshold.ordinal() || (logOnStdout && isConsoleRecord(buf, off, len))) {
+            levelDropped.inc();
+            return false;
+        }
+
+        return true;
+    }
+
+    boolean sample(@NonNull Message.Type type, @NonNull String text, long now, @NonNull List<Message> out) {
+        String key = key(text);
+        synchronized (samples) {
+            Sample sample = samples.get(key);
+            if (sample != null && now - sample.start <= SAMPLE_WINDOW) {
+                sample.suppressed++;
+                sample.last = text;
+                sampledDropped.inc();
+                return false;
+            }
+
+            if (sample != null && sample.suppressed > 0) out.add(summary(sample));
+            samples.put(key, new Sample(type, text, now));
+
+            if (samples.size() > MAX_SAMPLED_KEYS) {
+                Iterator<Sample> iterator = samples.values().iterator();
+                Sample eldest = iterator.next();
+                iterator.remove();
+                if (eldest.suppressed > 0) out.add(summary(eldest));
+            }
+
+            return true;
+        }
+    }
+
+    void flush(long now, @NonNull List<Message> out) {
+        synchronized (samples) {
+            Iterator<Sample> iterator = samples.values().iterator();
+            while (iterator.hasNext()) {
+                Sample sample = iterator.next();
+                if (now - sample.start <= SAMPLE_WINDOW) continue;
+
+                if (sample.suppressed > 0) out.add(summary(sample));
+                iterator.remove();
+            }
+        }
+    }
+
+    public enum Level {
+        DEBUG, INFO, NOTICE, WARN, ERROR;
+
+        static final Level[] VALUES = values();
+        private final byte[] tag = (name() + "]").getBytes(StandardCharsets.US_ASCII);
+
+        @NonNull
+        public static Level parse(@Nullable String str, @NonNull Level fallback) {
+            if (str == null) return fallback;
+
+            try {
+                return valueOf(str.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                return fallback;
+            }
+        }
+
+        @NonNull
+        public String option() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        private boolean matches(@NonNull byte[] buf, int off, int end) {
+            if (end - off < tag.length) return false;
+
+            for (int i = 0; i < tag.length; i++)
+                if (buf[off + i] != tag[i]) return false;
+
+            return true;
+        }
+    }
+
+    private static class Sample {
+        final Message.Type type;
+        final long start;
+        String last;
+        int suppressed = 0;
+
+        Sample(@NonNull Message.Type type, @NonNull String text, long start) {
+            this.type = type;
+            this.last = text;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+public interface LogProvider {
+    int DEBUG = 3;
+    int INFO = 4;
+    int WARN = 5;
+    int ERROR = 6;
+
+    void log(int priority, @NonNull String tag, @NonNull String msg, @Nullable Throwable tr);
+}
@@ -0,0 +1,38 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+final class Logger {
+
+    private Logger() {
+    }
+
+    static void d(@NonNull String tag, @NonNull String msg) {
+        Platform.log().log(LogProvider.DEBUG, tag, msg, null);
+    }
+
+    static void i(@NonNull String tag, @NonNull String msg) {
+        Platform.log().log(LogProvider.INFO, tag, msg, null);
+    }
+
+    static void w(@NonNull String tag, @NonNull String msg) {
+        Platform.log().log(LogProvider.WARN, tag, msg, null);
+    }
+
+    static void w(@NonNull String tag, @NonNull String msg, @Nullable Throwable tr) {
+        Platform.log().log(LogProvider.WARN, tag, msg, tr);
+    }
+
+    static void w(@NonNull String tag, @NonNull Throwable tr) {
+        Platform.log().log(LogProvider.WARN, tag, String.valueOf(tr.getMessage()), tr);
+    }
+
+    static void e(@NonNull String tag, @NonNull String msg) {
+        Platform.log().log(LogProvider.ERROR, tag, msg, null);
+    }
+
+    static void e(@NonNull String tag, @NonNull String msg, @Nullable Throwable tr) {
+        Platform.log().log(LogProvider.ERROR, tag, msg, tr);
+    }
+}
@@ -1,7 +1,5 @@
 package com.gianlu.aria2lib.internal;
 
-import android.util.Log;
-
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -17,6 +15,8 @@ public final class Message {
     }
 
     public int delay;
+    int instance;
+    long postedAt;
     private Object o;
     private int i;
     private Type type;
@@ -46,6 +46,7 @@ public final class Message {
             Message msg = cache.isEmpty() ? null : cache.poll();
             if (msg == null) msg = new Message();
             msg.recycled = false;
+            msg.instance = 0;
             msg.type = type;
             msg.i = i;
             msg.o = o;
@@ -58,6 +59,10 @@ public final class Message {
         return type;
     }
 
+    public int instance() {
+        return instance;
+    }
+
     public int integer() {
         return i;
     }
@@ -67,6 +72,12 @@ public final class Message {
         return o;
     }
 
+    void conflate(@NonNull Message newer) {
+        i = newer.i;
+        o = newer.o;
+        newer.recycle();
+    }
+
     public void recycle() {
         synchronized (cache) {
             if (!recycled) {
@@ -78,33 +89,16 @@ public final class Message {
 
     @Override
     public String toString() {
-        return "Message{o=" + o + ", i=" + i + ", type=" + type + '}';
+        return "Message{o=" + o + ", i=" + i + ", type=" + type + ", instance=" + instance + '}';
     }
 
-    public void log(@NonNull String tag) {
-        int p = type.getPriority();
-        if (p != -1) Log.println(p, tag, toString());
+    public interface Listener {
+        void onMessage(@NonNull Message msg);
     }
 
     public enum Type {
         PROCESS_TERMINATED, PROCESS_STARTED, MONITOR_FAILED, MONITOR_UPDATE,
-        PROCESS_WARN, PROCESS_ERROR, PROCESS_INFO;
-
-        private int getPriority() {
-            switch (this) {
-                case MONITOR_UPDATE:
-                    return -1;
-                case PROCESS_INFO:
-                case PROCESS_STARTED:
-                case PROCESS_TERMINATED:
-                    return Log.INFO;
-                case PROCESS_WARN:
-                    return Log.WARN;
-                default:
-                case PROCESS_ERROR:
-                case MONITOR_FAILED:
-                    return Log.ERROR;
-            }
-        }
+        PROCESS_WARN, PROCESS_ERROR, PROCESS_INFO, MEMORY_LEVEL_CHANGED, DOWNLOAD_PROGRESS,
+        SPACE_LEVEL_CHANGED
     }
 }
@@ -0,0 +1,220 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+final class MessageHandler implements Runnable, Closeable {
+    private static final int GUARD_INTERVAL = 8;
+    final List<Message.Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Lane[] laneValues = Lane.values();
+    private final ArrayDeque<Message>[] lanes;
+    private final Metrics.Counter[] dropped;
+    private final Metrics.Summary latency;
+    private final Map<String, Message> pendingProgress = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int sinceGuard = 0;
+    private volatile boolean shouldStop = false;
+
+    @SuppressWarnings("unchecked")
+    MessageHandler(@NonNull String instance) {
+        Metrics metrics = Metrics.get();
+        latency = metrics.summary("aria2_message_dispatch_seconds", "Time between posting a message and delivering it to all listeners.", "instance", instance);
+
+        lanes = new ArrayDeque[laneValues.length];
+        dropped = new Metrics.Counter[laneValues.length];
+        for (Lane lane : laneValues) {
+            String name = lane.name().toLowerCase(Locale.ROOT);
+            lanes[lane.ordinal()] = new ArrayDeque<>();
+            dropped[lane.ordinal()] = metrics.counter("aria2_messages_dropped_total", "Messages dropped or conflated because their lane was full.", "instance", instance, "lane", name);
+            metrics.gauge("aria2_message_queue_depth", "Messages waiting to be dispatched.", () -> size(lane), "instance", instance, "lane", name);
+        }
+    }
+
+    private static void discard(@NonNull Message msg) {
+        Object obj = msg.object();
+        if (obj instanceof MonitorUpdate) ((MonitorUpdate) obj).recycle();
+        msg.recycle();
+    }
+
+    @Nullable
+    private static String progressKey(@NonNull Message msg) {
+        Object obj = msg.object();
+        return obj instanceof DownloadProgress ? ((DownloadProgress) obj).gid : null;
+    }
+
+    void post(@NonNull Message msg) {
+        Lane lane = Lane.of(msg.type());
+        lock.lock();
+        try {
+            String key = lane == Lane.PROGRESS ? progressKey(msg) : null;
+            if (key != null) {
+                Message pending = pendingProgress.get(key);
+                if (pending != null) {
+                    pending.conflate(msg);
+                    dropped[lane.ordinal()].inc();
+                    return;
+                }
+            }
+
+            ArrayDeque<Message> queue = lanes[lane.ordinal()];
+            if (queue.size() >= lane.capacity) {
+                Message eldest = queue.pollFirst();
+                if (lane == Lane.PROGRESS) pendingProgress.remove(progressKey(eldest));
+                discard(eldest);
+                dropped[lane.ordinal()].inc();
+            }
+
+            queue.addLast(msg);
+            if (key != null) pendingProgress.put(key, msg);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            int size = 0;
+            for (ArrayDeque<Message> queue : lanes) size += queue.size();
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int size(@NonNull Lane lane) {
+        lock.lock();
+        try {
+            return lanes[lane.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Nullable
+    private ArrayDeque<Message> next() {
+        if (++sinceGuard >= GUARD_INTERVAL) {
+            sinceGuard = 0;
+
+            ArrayDeque<Message> oldest = null;
+            for (ArrayDeque<Message> queue : lanes) {
+                Message head = queue.peekFirst();
+                if (head != null && (oldest == null || head.postedAt - oldest.peekFirst().postedAt < 0))
+                    oldest = queue;
+            }
+
+            return oldest;
+        }
+
+        for (ArrayDeque<Message> queue : lanes)
+            if (!queue.isEmpty()) return queue;
+
+        return null;
+    }
+
+    @Nullable
+    private Message take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!shouldStop) {
+                ArrayDeque<Message> queue = next();
+                if (queue == lanes[Lane.PROGRESS.ordinal()]) {
+                    Message msg = queue.pollFirst();
+                    pendingProgress.remove(progressKey(msg));
+                    return msg;
+                } else if (queue != null) {
+                    return queue.pollFirst();
+                }
+
+                notEmpty.await();
+            }
+
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void dispatch(@NonNull Message msg) {
+        for (Message.Listener listener : listeners)
+            listener.onMessage(msg);
+
+        // Listeners must copy pooled objects they keep, they go back to the pool only after all of them ran
+        latency.observeNanos(System.nanoTime() - msg.postedAt - TimeUnit.MILLISECONDS.toNanos(msg.delay));
+        discard(msg);
+    }
+
+    @Override
+    public void run() {
+        while (!shouldStop) {
+            try {
+                Message msg = take();
+                if (msg == null) break;
+
+                long wait = msg.postedAt + TimeUnit.MILLISECONDS.toNanos(msg.delay) - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+
+                dispatch(msg);
+            } catch (InterruptedException ex) {
+                close();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        shouldStop = true;
+
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    enum Lane {
+        LIFECYCLE(Integer.MAX_VALUE), ERROR(1024), MONITOR(1), PROGRESS(256), INFO(4096);
+
+        private final int capacity;
+
+        Lane(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @NonNull
+        static Lane of(@NonNull Message.Type type) {
+            switch (type) {
+                case PROCESS_STARTED:
+                case PROCESS_TERMINATED:
+                case MEMORY_LEVEL_CHANGED:
+                case SPACE_LEVEL_CHANGED:
+                    return LIFECYCLE;
+                case PROCESS_ERROR:
+                case PROCESS_WARN:
+                case MONITOR_FAILED:
+                    return ERROR;
+                case MONITOR_UPDATE:
+                    return MONITOR;
+                case DOWNLOAD_PROGRESS:
+                    return PROGRESS;
+                default:
+                case PROCESS_INFO:
+                    return INFO;
+            }
+        }
+    }
+}
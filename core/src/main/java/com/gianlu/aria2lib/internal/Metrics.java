@@ -0,0 +1,235 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class Metrics {
+    private static final Metrics instance = new Metrics();
+    private final Map<String, Family> families = new LinkedHashMap<>();
+    private final List<Runnable> collectors = new CopyOnWriteArrayList<>();
+    private final Counter collectorErrors;
+
+    private Metrics() {
+        collectorErrors = counter("aria2_metrics_collector_errors_total", "Metrics collectors that threw while collecting.");
+    }
+
+    @NonNull
+    public static Metrics get() {
+        return instance;
+    }
+
+    @NonNull
+    private static String labels(@NonNull String... labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be key/value pairs!");
+        if (labels.length == 0) return "";
+
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) builder.append(',');
+            builder.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+
+        return builder.append('}').toString();
+    }
+
+    @NonNull
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) return String.valueOf((long) value);
+        else return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    @NonNull
+    private synchronized Metric register(@NonNull String name, @NonNull String help, @NonNull String type, @NonNull String labels, @NonNull Metric metric) {
+        Family family = families.get(name);
+        if (family == null) families.put(name, family = new Family(help, type));
+        else if (!family.type.equals(type)) throw new IllegalArgumentException(name + " is already a " + family.type);
+
+        Metric existing = family.metrics.get(labels);
+        if (existing != null) return existing;
+
+        family.metrics.put(labels, metric);
+        return metric;
+    }
+
+    @NonNull
+    public Counter counter(@NonNull String name, @NonNull String help, @NonNull String... labels) {
+        return (Counter) register(name, help, "counter", labels(labels), new Counter());
+    }
+
+    @NonNull
+    public Gauge gauge(@NonNull String name, @NonNull String help, @NonNull String... labels) {
+        return (Gauge) register(name, help, "gauge", labels(labels), new Gauge(null));
+    }
+
+    public void gauge(@NonNull String name, @NonNull String help, @NonNull Gauge.Source source, @NonNull String... labels) {
+        synchronized (this) {
+            Family family = families.get(name);
+            if (family != null) family.metrics.remove(labels(labels));
+        }
+
+        register(name, help, "gauge", labels(labels), new Gauge(source));
+    }
+
+    @NonNull
+    public Summary summary(@NonNull String name, @NonNull String help, @NonNull String... labels) {
+        return (Summary) register(name, help, "summary", labels(labels), new Summary());
+    }
+
+    public synchronized void remove(@NonNull String name, @NonNull String... labels) {
+        Family family = families.get(name);
+        if (family == null) return;
+
+        family.metrics.remove(labels(labels));
+        if (family.metrics.isEmpty()) families.remove(name);
+    }
+
+    public void addCollector(@NonNull Runnable collector) {
+        collectors.add(collector);
+    }
+
+    public void removeCollector(@NonNull Runnable collector) {
+        collectors.remove(collector);
+    }
+
+    private void collect() {
+        for (Runnable collector : collectors) {
+            try {
+                collector.run();
+            } catch (RuntimeException ex) {
+                collectorErrors.inc();
+            }
+        }
+    }
+
+    @NonNull
+    public Map<String, Double> snapshot() {
+        collect();
+
+        Map<String, Double> map = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Map.Entry<String, Family> family : families.entrySet()) {
+                for (Map.Entry<String, Metric> entry : family.getValue().metrics.entrySet())
+                    entry.getValue().sample(family.getKey(), entry.getKey(), map);
+            }
+        }
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    @NonNull
+    public String toPrometheus() {
+        collect();
+
+        StringBuilder builder = new StringBuilder();
+        synchronized (this) {
+            Map<String, Double> samples = new LinkedHashMap<>();
+            for (Map.Entry<String, Family> entry : families.entrySet()) {
+                Family family = entry.getValue();
+                if (family.metrics.isEmpty()) continue;
+
+                builder.append("# HELP ").append(entry.getKey()).append(' ').append(family.help).append('\n');
+                builder.append("# TYPE ").append(entry.getKey()).append(' ').append(family.type).append('\n');
+
+                samples.clear();
+                for (Map.Entry<String, Metric> metric : family.metrics.entrySet())
+                    metric.getValue().sample(entry.getKey(), metric.getKey(), samples);
+
+                for (Map.Entry<String, Double> sample : samples.entrySet())
+                    builder.append(sample.getKey()).append(' ').append(format(sample.getValue())).append('\n');
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private interface Metric {
+        void sample(@NonNull String name, @NonNull String labels, @NonNull Map<String, Double> out);
+    }
+
+    private static class Family {
+        final String help;
+        final String type;
+        final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+        Family(@NonNull String help, @NonNull String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    public static class Counter implements Metric {
+        private final AtomicLong value = new AtomicLong(0);
+
+        public void inc() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long value() {
+            return value.get();
+        }
+
+        @Override
+        public void sample(@NonNull String name, @NonNull String labels, @NonNull Map<String, Double> out) {
+            out.put(name + labels, (double) value.get());
+        }
+    }
+
+    public static class Gauge implements Metric {
+        private final Source source;
+        private volatile double value = 0;
+
+        Gauge(Source source) {
+            this.source = source;
+        }
+
+        public void set(double value) {
+            this.value = value;
+        }
+
+        public double value() {
+            return source != null ? source.value() : value;
+        }
+
+        @Override
+        public void sample(@NonNull String name, @NonNull String labels, @NonNull Map<String, Double> out) {
+            out.put(name + labels, value());
+        }
+
+        public interface Source {
+            double value();
+        }
+    }
+
+    public static class Summary implements Metric {
+        private long count = 0;
+        private double sum = 0;
+
+        public synchronized void observe(double value) {
+            count++;
+            sum += value;
+        }
+
+        public void observeNanos(long nanos) {
+            observe(nanos / 1e9);
+        }
+
+        @Override
+        public synchronized void sample(@NonNull String name, @NonNull String labels, @NonNull Map<String, Double> out) {
+            out.put(name + "_count" + labels, (double) count);
+            out.put(name + "_sum" + labels, sum);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+public final class MetricsServer implements Runnable, Closeable {
+    private static final String TAG = MetricsServer.class.getSimpleName();
+    private static final int READ_TIMEOUT = 5000;
+    private final ServerSocket server;
+    private volatile boolean shouldStop = false;
+
+    public MetricsServer(int port) throws IOException {
+        server = new ServerSocket(port, 4, InetAddress.getByName("127.0.0.1"));
+    }
+
+    private static void respond(@NonNull OutputStream out, @NonNull String status, @NonNull String contentType, @NonNull String body) throws IOException {
+        byte[] payload = body.getBytes(StandardCharsets.UTF_8);
+        String headers = "HTTP/1.1 " + status + "\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Length: " + payload.length + "\r\n" +
+                "Connection: close\r\n\r\n";
+        out.write(headers.getBytes(StandardCharsets.US_ASCII));
+        out.write(payload);
+        out.flush();
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    public void start() {
+        Scheduler.get().runDedicated("aria2-metricsServer", this);
+    }
+
+    @Override
+    public void run() {
+        while (!shouldStop) {
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(READ_TIMEOUT);
+                handle(socket);
+            } catch (IOException ex) {
+                if (!shouldStop) Logger.w(TAG, "Failed serving metrics.", ex);
+            }
+        }
+    }
+
+    private void handle(@NonNull Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        String request = in.readLine();
+        if (request == null) return;
+
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) ;
+
+        OutputStream out = socket.getOutputStream();
+        String[] split = request.split(" ");
+        if (split.length < 2 || !split[0].equals("GET")) {
+            respond(out, "405 Method Not Allowed", "text/plain", "Method not allowed\n");
+        } else if (split[1].equals("/metrics") || split[1].startsWith("/metrics?")) {
+            respond(out, "200 OK", "text/plain; version=0.0.4; charset=utf-8", Metrics.get().toPrometheus());
+        } else {
+            respond(out, "404 Not Found", "text/plain", "Not found\n");
+        }
+    }
+
+    @Override
+    public void close() {
+        shouldStop = true;
+
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
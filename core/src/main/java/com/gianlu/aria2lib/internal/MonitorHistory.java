@@ -0,0 +1,200 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+public final class MonitorHistory {
+    private final Ring[] rings;
+
+    MonitorHistory() {
+        Resolution[] resolutions = Resolution.values();
+        rings = new Ring[resolutions.length];
+        for (Resolution resolution : resolutions)
+            rings[resolution.ordinal()] = new Ring(resolution);
+    }
+
+    synchronized void record(long time, int cpu, long rss) {
+        for (Ring ring : rings) ring.record(time, cpu, rss);
+    }
+
+    synchronized void clear() {
+        for (Ring ring : rings) ring.clear();
+    }
+
+    @NonNull
+    public Series query(@NonNull Resolution resolution) {
+        return query(resolution, 0);
+    }
+
+    @NonNull
+    public synchronized Series query(@NonNull Resolution resolution, long since) {
+        return rings[resolution.ordinal()].query(since);
+    }
+
+    public enum Resolution {
+        SECOND(TimeUnit.SECONDS.toMillis(1), 600), MINUTE(TimeUnit.MINUTES.toMillis(1), 1440);
+
+        public final long step;
+        public final int slots;
+
+        Resolution(long step, int slots) {
+            this.step = step;
+            this.slots = slots;
+        }
+    }
+
+    private static final class Ring {
+        private final Resolution resolution;
+        private final long[] time;
+        private final int[] count;
+        private final int[] cpuMin;
+        private final int[] cpuMax;
+        private final long[] cpuSum;
+        private final long[] rssMin;
+        private final long[] rssMax;
+        private final long[] rssSum;
+        private int head = -1;
+        private int size = 0;
+
+        Ring(@NonNull Resolution resolution) {
+            this.resolution = resolution;
+            time = new long[resolution.slots];
+            count = new int[resolution.slots];
+            cpuMin = new int[resolution.slots];
+            cpuMax = new int[resolution.slots];
+            cpuSum = new long[resolution.slots];
+            rssMin = new long[resolution.slots];
+            rssMax = new long[resolution.slots];
+            rssSum = new long[resolution.slots];
+        }
+
+        void record(long now, int cpu, long rss) {
+            long bucket = now - now % resolution.step;
+            if (head == -1 || time[head] != bucket) {
+                if (head != -1 && bucket < time[head]) return;
+
+                head = (head + 1) % time.length;
+                if (size < time.length) size++;
+
+                time[head] = bucket;
+                count[head] = 0;
+                cpuMin[head] = cpuMax[head] = cpu;
+                rssMin[head] = rssMax[head] = rss;
+                cpuSum[head] = rssSum[head] = 0;
+            }
+
+            count[head]++;
+            cpuSum[head] += cpu;
+            rssSum[head] += rss;
+            if (cpu < cpuMin[head]) cpuMin[head] = cpu;
+            if (cpu > cpuMax[head]) cpuMax[head] = cpu;
+            if (rss < rssMin[head]) rssMin[head] = rss;
+            if (rss > rssMax[head]) rssMax[head] = rss;
+        }
+
+        void clear() {
+            head = -1;
+            size = 0;
+        }
+
+        @NonNull
+        Series query(long since) {
+            int first = (head - size + 1 + time.length) % time.length;
+            int skip = 0;
+            while (skip < size && time[(first + skip) % time.length] < since) skip++;
+
+            Series series = new Series(resolution, size - skip);
+            for (int i = 0; i < series.size; i++) {
+                int j = (first + skip + i) % time.length;
+                series.time[i] = time[j];
+                series.count[i] = count[j];
+                series.cpuMin[i] = cpuMin[j];
+                series.cpuMax[i] = cpuMax[j];
+                series.cpuAvg[i] = (int) (cpuSum[j] / count[j]);
+                series.rssMin[i] = rssMin[j];
+                series.rssMax[i] = rssMax[j];
+                series.rssAvg[i] = rssSum[j] / count[j];
+            }
+
+            return series;
+        }
+    }
+
+    public static final class Series implements Serializable {
+        public final Resolution resolution;
+        public final int size;
+        public final long[] time;
+        public final int[] count;
+        public final int[] cpuMin;
+        public final int[] cpuMax;
+        public final int[] cpuAvg;
+        public final long[] rssMin;
+        public final long[] rssMax;
+        public final long[] rssAvg;
+
+        Series(@NonNull Resolution resolution, int size) {
+            this.resolution = resolution;
+            this.size = size;
+            time = new long[size];
+            count = new int[size];
+            cpuMin = new int[size];
+            cpuMax = new int[size];
+            cpuAvg = new int[size];
+            rssMin = new long[size];
+            rssMax = new long[size];
+            rssAvg = new long[size];
+        }
+
+        @NonNull
+        public Rollup rollup() {
+            if (size == 0) return new Rollup(0, 0, 0, 0, 0, 0, 0);
+
+            int samples = 0;
+            int cpuMin = Integer.MAX_VALUE;
+            int cpuMax = Integer.MIN_VALUE;
+            long rssMin = Long.MAX_VALUE;
+            long rssMax = Long.MIN_VALUE;
+            long cpuSum = 0;
+            long rssSum = 0;
+            for (int i = 0; i < size; i++) {
+                samples += count[i];
+                cpuSum += (long) cpuAvg[i] * count[i];
+                rssSum += rssAvg[i] * count[i];
+                cpuMin = Math.min(cpuMin, this.cpuMin[i]);
+                cpuMax = Math.max(cpuMax, this.cpuMax[i]);
+                rssMin = Math.min(rssMin, this.rssMin[i]);
+                rssMax = Math.max(rssMax, this.rssMax[i]);
+            }
+
+            return new Rollup(samples, cpuMin, cpuMax, (int) (cpuSum / samples), rssMin, rssMax, rssSum / samples);
+        }
+    }
+
+    public static final class Rollup implements Serializable {
+        public final int samples;
+        public final int cpuMin;
+        public final int cpuMax;
+        public final int cpuAvg;
+        public final long rssMin;
+        public final long rssMax;
+        public final long rssAvg;
+
+        Rollup(int samples, int cpuMin, int cpuMax, int cpuAvg, long rssMin, long rssMax, long rssAvg) {
+            this.samples = samples;
+            this.cpuMin = cpuMin;
+            this.cpuMax = cpuMax;
+            this.cpuAvg = cpuAvg;
+            this.rssMin = rssMin;
+            this.rssMax = rssMax;
+            this.rssAvg = rssAvg;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Rollup{samples=" + samples + ", cpuMin=" + cpuMin + ", cpuMax=" + cpuMax + ", cpuAvg=" + cpuAvg + ", rssMin=" + rssMin + ", rssMax=" + rssMax + ", rssAvg=" + rssAvg + '}';
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Serializable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class MonitorUpdate implements Serializable {
+    public static final int CPU_SCALE = 100;
+    public static final long UNKNOWN = -1;
+    private static final Queue<MonitorUpdate> cache = new ConcurrentLinkedQueue<>();
+
+    static {
+        for (int i = 0; i < 10; i++)
+            cache.add(new MonitorUpdate());
+    }
+
+    private final AtomicBoolean recycled = new AtomicBoolean(false);
+    private long rss;
+    private int cpu;
+    private int pid;
+    private long readRate;
+    private long writeRate;
+    private long rxRate;
+    private long txRate;
+    private ThreadUsage[] threads;
+
+    private MonitorUpdate() {
+    }
+
+    @NonNull
+    public static MonitorUpdate obtain(int pid, int cpu, long rss) {
+        MonitorUpdate msg = cache.poll();
+        if (msg == null) msg = new MonitorUpdate();
+        msg.recycled.set(false);
+        msg.pid = pid;
+        msg.cpu = cpu;
+        msg.rss = rss;
+        msg.readRate = msg.writeRate = msg.rxRate = msg.txRate = UNKNOWN;
+        msg.threads = null;
+        return msg;
+    }
+
+    void extended(long readRate, long writeRate, long rxRate, long txRate, @Nullable ThreadUsage[] threads) {
+        this.readRate = readRate;
+        this.writeRate = writeRate;
+        this.rxRate = rxRate;
+        this.txRate = txRate;
+        this.threads = threads;
+    }
+
+    @NonNull
+    public MonitorUpdate snapshot() {
+        MonitorUpdate copy = new MonitorUpdate();
+        copy.pid = pid;
+        copy.cpu = cpu;
+        copy.rss = rss;
+        copy.extended(readRate, writeRate, rxRate, txRate, threads);
+        return copy;
+    }
+
+    public void recycle() {
+        if (recycled.compareAndSet(false, true))
+            cache.add(this);
+    }
+
+    public int pid() {
+        return pid;
+    }
+
+    public int cpuFixed() {
+        return cpu;
+    }
+
+    public float cpu() {
+        return cpu / (float) CPU_SCALE;
+    }
+
+    public long rss() {
+        return rss;
+    }
+
+    public long readRate() {
+        return readRate;
+    }
+
+    public long writeRate() {
+        return writeRate;
+    }
+
+    public long rxRate() {
+        return rxRate;
+    }
+
+    public long txRate() {
+        return txRate;
+    }
+
+    @Nullable
+    public ThreadUsage[] threads() {
+        return threads;
+    }
+
+    public static final class ThreadUsage implements Serializable {
+        public final int tid;
+        public final String name;
+        public final int cpu;
+
+        ThreadUsage(int tid, @NonNull String name, int cpu) {
+            this.tid = tid;
+            this.name = name;
+            this.cpu = cpu;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "ThreadUsage{tid=" + tid + ", name=" + name + ", cpu=" + cpu + '}';
+        }
+    }
+}
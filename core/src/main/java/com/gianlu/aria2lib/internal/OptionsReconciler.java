@@ -0,0 +1,141 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+public final class OptionsReconciler {
+    private static final Set<String> RUNTIME_OPTIONS = new HashSet<>(Arrays.asList(
+            // Global only
+            "bt-max-open-files", "download-result", "keep-unfinished-download-result", "log", "log-level",
+            "max-concurrent-downloads", "max-download-result", "max-overall-download-limit", "max-overall-upload-limit",
+            "optimize-concurrent-downloads", "save-cookies", "save-session", "server-stat-of",
+            // Input file options (except checksum, index-out, out, pause and select-file)
+            "all-proxy", "all-proxy-passwd", "all-proxy-user", "allow-overwrite", "allow-piece-length-change",
+            "always-resume", "async-dns", "auto-file-renaming", "bt-enable-hook-after-hash-check", "bt-enable-lpd",
+            "bt-exclude-tracker", "bt-external-ip", "bt-force-encryption", "bt-hash-check-seed", "bt-load-saved-metadata",
+            "bt-max-peers", "bt-metadata-only", "bt-min-crypto-level", "bt-prioritize-piece", "bt-remove-unselected-file",
+            "bt-request-peer-speed-limit", "bt-require-crypto", "bt-save-metadata", "bt-seed-unverified", "bt-stop-timeout",
+            "bt-tracker", "bt-tracker-connect-timeout", "bt-tracker-interval", "bt-tracker-timeout", "check-integrity",
+            "conditional-get", "connect-timeout", "content-disposition-default-utf8", "continue", "dir", "dry-run",
+            "enable-http-keep-alive", "enable-http-pipelining", "enable-mmap", "enable-peer-exchange", "file-allocation",
+            "follow-metalink", "follow-torrent", "force-save", "ftp-passwd", "ftp-pasv", "ftp-proxy", "ftp-proxy-passwd",
+            "ftp-proxy-user", "ftp-reuse-connection", "ftp-type", "ftp-user", "gid", "hash-check-only", "header",
+            "http-accept-gzip", "http-auth-challenge", "http-no-cache", "http-passwd", "http-proxy", "http-proxy-passwd",
+            "http-proxy-user", "http-user", "https-proxy", "https-proxy-passwd", "https-proxy-user", "lowest-speed-limit",
+            "max-connection-per-server", "max-download-limit", "max-file-not-found", "max-mmap-limit",
+            "max-resume-failure-tries", "max-tries", "max-upload-limit", "metalink-base-uri",
+            "metalink-enable-unique-protocol", "metalink-language", "metalink-location", "metalink-os",
+            "metalink-preferred-protocol", "metalink-version", "min-split-size", "no-file-allocation-limit", "no-netrc",
+            "no-proxy", "parameterized-uri", "pause-metadata", "piece-length", "proxy-method", "realtime-chunk-checksum",
+            "referer", "remote-time", "remove-control-file", "retry-wait", "reuse-uri", "rpc-save-upload-metadata",
+            "seed-ratio", "seed-time", "split", "ssh-host-key-md", "stream-piece-selector", "timeout", "uri-selector",
+            "use-head", "user-agent"));
+
+    private OptionsReconciler() {
+    }
+
+    public static boolean isRuntimeOption(@NonNull String key) {
+        return RUNTIME_OPTIONS.contains(key);
+    }
+
+    @NonNull
+    @WorkerThread
+    public static Result reconcile(@NonNull Aria2 aria2) throws IOException {
+        Aria2Rpc rpc = aria2.rpc();
+        if (rpc == null) throw new IOException("aria2c is not running!");
+
+        Map<String, String> saved = Aria2.loadCustomOptions();
+        Result result = reconcile(rpc, saved, aria2.runningCustomOptions(), aria2.liveOptions());
+
+        Map<String, String> applied = new HashMap<>(result.applied.size());
+        for (String key : result.applied) applied.put(key, saved.get(key) == null ? "" : saved.get(key));
+        aria2.recordAppliedOptions(applied);
+        return result;
+    }
+
+    @NonNull
+    @WorkerThread
+    public static Result reconcile(@NonNull Aria2Cluster cluster) throws IOException {
+        Set<String> applied = new TreeSet<>();
+        Set<String> restart = new TreeSet<>();
+        for (Aria2 aria2 : cluster.instances()) {
+            if (!aria2.isRunning()) continue;
+
+            Result result = reconcile(aria2);
+            applied.addAll(result.applied);
+            restart.addAll(result.restartRequired);
+        }
+
+        return new Result(new ArrayList<>(applied), new ArrayList<>(restart));
+    }
+
+    @NonNull
+    @WorkerThread
+    public static Result reconcile(@NonNull Aria2Rpc rpc, @NonNull Map<String, String> saved, @NonNull Map<String, String> started) throws IOException {
+        return reconcile(rpc, saved, started, started);
+    }
+
+    @NonNull
+    @WorkerThread
+    public static Result reconcile(@NonNull Aria2Rpc rpc, @NonNull Map<String, String> saved, @NonNull Map<String, String> started, @NonNull Map<String, String> live) throws IOException {
+        // Compare with what was passed before, aria2 normalizes values (1M becomes 1048576)
+        Map<String, String> changes = new HashMap<>();
+        List<String> restart = new ArrayList<>();
+        for (Map.Entry<String, String> entry : saved.entrySet()) {
+            String key = entry.getKey();
+            if (Aria2.isForcedOption(key)) continue;
+
+            String value = entry.getValue() == null ? "" : entry.getValue();
+            if (RUNTIME_OPTIONS.contains(key)) {
+                String previous = live.containsKey(key) && live.get(key) == null ? "" : live.get(key);
+                if (!Objects.equals(previous, value)) changes.put(key, value);
+            } else {
+                if (!Objects.equals(started.get(key), entry.getValue())) restart.add(key);
+            }
+        }
+
+        for (String key : started.keySet()) {
+            if (!saved.containsKey(key) && !Aria2.isForcedOption(key))
+                restart.add(key);
+        }
+
+        if (!changes.isEmpty()) rpc.changeGlobalOption(changes);
+
+        List<String> applied = new ArrayList<>(changes.keySet());
+        Collections.sort(applied);
+        Collections.sort(restart);
+        return new Result(applied, restart);
+    }
+
+    public static class Result {
+        public final List<String> applied;
+        public final List<String> restartRequired;
+
+        Result(@NonNull List<String> applied, @NonNull List<String> restartRequired) {
+            this.applied = Collections.unmodifiableList(applied);
+            this.restartRequired = Collections.unmodifiableList(restartRequired);
+        }
+
+        public boolean needsRestart() {
+            return !restartRequired.isEmpty();
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Result{applied=" + applied + ", restartRequired=" + restartRequired + '}';
+        }
+    }
+}
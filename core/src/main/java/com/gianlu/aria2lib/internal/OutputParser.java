@@ -0,0 +1,45 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+final class OutputParser {
+
+    private OutputParser() {
+    }
+
+    @NonNull
+    static Message parse(@NonNull String line) {
+        if (line.startsWith("WARNING: ")) {
+            return Message.obtain(Message.Type.PROCESS_WARN, line.substring(9));
+        } else if (line.startsWith("ERROR: ")) {
+            return Message.obtain(Message.Type.PROCESS_ERROR, line.substring(7));
+        } else if (line.isEmpty() || line.charAt(0) < '0' || line.charAt(0) > '9') {
+            return Message.obtain(Message.Type.PROCESS_INFO, line);
+        }
+
+        int open = line.indexOf(" [");
+        int close = open == -1 ? -1 : line.indexOf("] ", open + 2);
+        if (close == -1) return Message.obtain(Message.Type.PROCESS_INFO, line);
+
+        Message.Type type;
+        switch (line.substring(open + 2, close)) {
+            case "ERROR":
+                type = Message.Type.PROCESS_ERROR;
+                break;
+            case "WARN":
+                type = Message.Type.PROCESS_WARN;
+                break;
+            default:
+                type = Message.Type.PROCESS_INFO;
+                break;
+        }
+
+        int start = close + 2;
+        if (line.startsWith("[", start)) {
+            int source = line.indexOf("] ", start);
+            if (source != -1 && line.lastIndexOf(':', source) > start) start = source + 2;
+        }
+
+        return Message.obtain(type, line.substring(start));
+    }
+}
@@ -0,0 +1,36 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class OutputTail {
+    private final String[] lines;
+    private int next = 0;
+    private int size = 0;
+
+    OutputTail(int capacity) {
+        lines = new String[capacity];
+    }
+
+    synchronized void add(@NonNull String line) {
+        lines[next] = line;
+        next = (next + 1) % lines.length;
+        if (size < lines.length) size++;
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < lines.length; i++) lines[i] = null;
+        next = 0;
+        size = 0;
+    }
+
+    @NonNull
+    synchronized List<String> snapshot() {
+        List<String> list = new ArrayList<>(size);
+        int start = (next - size + lines.length) % lines.length;
+        for (int i = 0; i < size; i++) list.add(lines[(start + i) % lines.length]);
+        return list;
+    }
+}
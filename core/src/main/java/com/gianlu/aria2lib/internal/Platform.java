@@ -0,0 +1,330 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+public final class Platform {
+    private static volatile LogProvider log = new StderrLog();
+    private static final List<RuntimeConfig.Listener> configListeners = new CopyOnWriteArrayList<>();
+    private static volatile ConfigProvider configSource = new SimpleConfig();
+    private static volatile RuntimeConfig config = RuntimeConfig.compile(0, configSource);
+    private static volatile CertificateProvider certificates = new JvmCertificates();
+
+    private Platform() {
+    }
+
+    public static void install(@NonNull LogProvider log, @NonNull ConfigProvider config, @NonNull CertificateProvider certificates) {
+        Platform.log = log;
+        Platform.certificates = certificates;
+
+        synchronized (Platform.class) {
+            Platform.configSource = config;
+        }
+
+        refreshConfig();
+    }
+
+    @NonNull
+    public static LogProvider log() {
+        return log;
+    }
+
+    @NonNull
+    public static RuntimeConfig config() {
+        return config;
+    }
+
+    @NonNull
+    public static RuntimeConfig refreshConfig() {
+        RuntimeConfig previous;
+        RuntimeConfig current;
+        synchronized (Platform.class) {
+            previous = config;
+            current = config = RuntimeConfig.compile(previous.version + 1, configSource);
+        }
+
+        for (RuntimeConfig.Listener listener : configListeners)
+            listener.onConfigChanged(previous, current);
+
+        return current;
+    }
+
+    public static void addConfigListener(@NonNull RuntimeConfig.Listener listener) {
+        configListeners.add(listener);
+    }
+
+    public static void removeConfigListener(@NonNull RuntimeConfig.Listener listener) {
+        configListeners.remove(listener);
+    }
+
+    @NonNull
+    public static CertificateProvider certificates() {
+        return certificates;
+    }
+
+    private static class StderrLog implements LogProvider {
+        private static final char[] LEVELS = {'V', 'V', 'V', 'D', 'I', 'W', 'E', 'A'};
+
+        @Override
+        public void log(int priority, @NonNull String tag, @NonNull String msg, @Nullable Throwable tr) {
+            synchronized (System.err) {
+                System.err.println(LEVELS[Math.max(0, Math.min(LEVELS.length - 1, priority))] + "/" + tag + ": " + msg);
+                if (tr != null) tr.printStackTrace(System.err);
+            }
+        }
+    }
+
+    private static class JvmCertificates implements CertificateProvider {
+
+        @NonNull
+        @Override
+        public List<Certificate> certificates() throws GeneralSecurityException {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init((KeyStore) null);
+
+            List<Certificate> list = new ArrayList<>();
+            for (TrustManager manager : factory.getTrustManagers()) {
+                if (manager instanceof X509TrustManager) {
+                    X509Certificate[] issuers = ((X509TrustManager) manager).getAcceptedIssuers();
+                    list.addAll(Arrays.asList(issuers));
+                }
+            }
+
+            return list;
+        }
+    }
+
+    public static class SimpleConfig implements ConfigProvider {
+        private final Map<String, String> customOptions = new HashMap<>();
+        private final List<File> instanceDirectories = new ArrayList<>();
+        private int rpcPort = 6800;
+        private String rpcToken = "aria2";
+        private boolean rpcListenAll = false;
+        private boolean rpcAllowOriginAll = false;
+        private boolean checkCertificate = false;
+        private boolean saveSession = true;
+        private boolean showPerformance = false;
+        private int monitorDelay = 1;
+        private String logLevel = "notice";
+        private int summaryInterval = 60;
+        private boolean storageTuning = true;
+        private long spaceLowWatermark = 256L * 1024 * 1024;
+        private long spaceHighWatermark = 512L * 1024 * 1024;
+        private String outputDirectory = new File(System.getProperty("user.dir", "."), "downloads").getAbsolutePath();
+        private int instances = 1;
+        private int metricsPort = 0;
+
+        @NonNull
+        public SimpleConfig rpc(int port, @Nullable String token, boolean listenAll, boolean allowOriginAll) {
+            this.rpcPort = port;
+            this.rpcToken = token;
+            this.rpcListenAll = listenAll;
+            this.rpcAllowOriginAll = allowOriginAll;
+            return this;
+        }
+
+        @NonNull
+        public SimpleConfig checkCertificate(boolean checkCertificate) {
+            this.checkCertificate = checkCertificate;
+            return this;
+        }
+
+        @NonNull
+        public SimpleConfig saveSession(boolean saveSession) {
+            this.saveSession = saveSession;
+            return this;
+        }
+
+        @NonNull
+        public SimpleConfig monitor(boolean showPerformance, int delaySec) {
+            this.showPerformance = showPerformance;
+            this.monitorDelay = delaySec;
+            return this;
+        }
+
+        @NonNull
+        public SimpleConfig log(@NonNull LogPolicy.Level level, int summaryInterval) {
+            this.logLevel = level.option();
+            this.summaryInterval = summaryInterval;
+            return this;
+        }
+
+        @NonNull
+        public SimpleConfig storageTuning(boolean storageTuning) {
+            this.storageTuning = storageTuning;
+            return this;
+        }
+
+        @NonNull
+        public SimpleConfig spaceWatermarks(long low, long high) {
+            this.spaceLowWatermark = low;
+            this.spaceHighWatermark = high;
+            return this;
+        }
+
+        @NonNull
+        public SimpleConfig outputDirectory(@NonNull String outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            return this;
+        }
+
+        @NonNull
+        public SimpleConfig metricsPort(int metricsPort) {
+            this.metricsPort = metricsPort;
+            return this;
+        }
+
+        @NonNull
+        public SimpleConfig customOption(@NonNull String key, @Nullable String value) {
+            synchronized (customOptions) {
+                if (value == null) customOptions.remove(key);
+                else customOptions.put(key, value);
+            }
+
+            return this;
+        }
+
+        @NonNull
+        public SimpleConfig instances(int instances, @NonNull File... directories) {
+            this.instances = instances;
+            synchronized (instanceDirectories) {
+                instanceDirectories.clear();
+                instanceDirectories.addAll(Arrays.asList(directories));
+            }
+
+            return this;
+        }
+
+        @Override
+        public int rpcPort() {
+            return rpcPort;
+        }
+
+        @Nullable
+        @Override
+        public String rpcToken() {
+            return rpcToken;
+        }
+
+        @Override
+        public boolean rpcListenAll() {
+            return rpcListenAll;
+        }
+
+        @Override
+        public boolean rpcAllowOriginAll() {
+            return rpcAllowOriginAll;
+        }
+
+        @Override
+        public boolean checkCertificate() {
+            return checkCertificate;
+        }
+
+        @Override
+        public boolean saveSession() {
+            return saveSession;
+        }
+
+        @Override
+        public boolean showPerformance() {
+            return showPerformance;
+        }
+
+        @Override
+        public int monitorDelay() {
+            return monitorDelay;
+        }
+
+        @NonNull
+        @Override
+        public String logLevel() {
+            return logLevel;
+        }
+
+        @Override
+        public int summaryInterval() {
+            return summaryInterval;
+        }
+
+        @Override
+        public boolean storageTuning() {
+            return storageTuning;
+        }
+
+        @Override
+        public long spaceLowWatermark() {
+            return spaceLowWatermark;
+        }
+
+        @Override
+        public long spaceHighWatermark() {
+            return spaceHighWatermark;
+        }
+
+        @NonNull
+        @Override
+        public String outputDirectory() {
+            return outputDirectory;
+        }
+
+        @NonNull
+        @Override
+        public Map<String, String> customOptions() {
+            synchronized (customOptions) {
+                return new HashMap<>(customOptions);
+            }
+        }
+
+        @Override
+        public int instances() {
+            return instances;
+        }
+
+        @NonNull
+        @Override
+        public List<File> instanceDirectories() {
+            synchronized (instanceDirectories) {
+                return Collections.unmodifiableList(new ArrayList<>(instanceDirectories));
+            }
+        }
+
+        @Override
+        public int metricsPort() {
+            return metricsPort;
+        }
+
+        @Override
+        public boolean autoTuning() {
+            return false;
+        }
+
+        @Override
+        public boolean memoryGovernor() {
+            return false;
+        }
+
+        @Override
+        public boolean broadcastMessages() {
+            return false;
+        }
+    }
+}
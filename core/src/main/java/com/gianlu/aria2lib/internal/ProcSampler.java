@@ -0,0 +1,291 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+final class ProcSampler {
+    private static final String TAG = ProcSampler.class.getSimpleName();
+    private static final int CLOCK_TICKS = 100;
+    private static final int MAX_THREADS = 256;
+    private static final byte[] READ_BYTES = "read_bytes:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WRITE_BYTES = "write_bytes:".getBytes(StandardCharsets.US_ASCII);
+    private final int pid;
+    private final String base;
+    private final File taskDir;
+    private final long[] values = new long[2];
+    private byte[] buf = new byte[4096];
+    private int[] tids = new int[16];
+    private long[] ticks = new long[16];
+    private String[] names = new String[16];
+    private int threads = 0;
+    private int[] prevTids = new int[16];
+    private long[] prevTicks = new long[16];
+    private String[] prevNames = new String[16];
+    private int prevThreads = 0;
+    private long lastSample = 0;
+    private long lastRead = -1;
+    private long lastWrite = -1;
+    private long lastRx = -1;
+    private long lastTx = -1;
+    private boolean ioAvailable = true;
+    private boolean netAvailable = true;
+    private boolean tasksAvailable = true;
+
+    ProcSampler(int pid) {
+        this.pid = pid;
+        this.base = "/proc/" + pid + "/";
+        this.taskDir = new File(base + "task");
+    }
+
+    private static int skipSpaces(@NonNull byte[] buf, int i, int end) {
+        while (i < end && (buf[i] == ' ' || buf[i] == '\t')) i++;
+        return i;
+    }
+
+    private static int skipToken(@NonNull byte[] buf, int i, int end) {
+        while (i < end && buf[i] != ' ' && buf[i] != '\t' && buf[i] != '\n') i++;
+        return i;
+    }
+
+    private static long parseLong(@NonNull byte[] buf, int i, int end) {
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = buf[i];
+            if (b < '0' || b > '9') break;
+            value = value * 10 + (b - '0');
+        }
+
+        return value;
+    }
+
+    private static boolean startsWith(@NonNull byte[] buf, int i, int end, @NonNull byte[] prefix) {
+        if (end - i < prefix.length) return false;
+        for (int j = 0; j < prefix.length; j++)
+            if (buf[i + j] != prefix[j]) return false;
+
+        return true;
+    }
+
+    private static long rate(long previous, long current, long elapsed) {
+        if (previous < 0 || current < previous) return MonitorUpdate.UNKNOWN;
+        else return (current - previous) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    int pid() {
+        return pid;
+    }
+
+    void sample(@NonNull MonitorUpdate update) {
+        long now = System.nanoTime();
+        long elapsed = lastSample == 0 ? 0 : now - lastSample;
+        lastSample = now;
+
+        long read = MonitorUpdate.UNKNOWN;
+        long write = MonitorUpdate.UNKNOWN;
+        if (ioAvailable) {
+            if (readIo()) {
+                read = elapsed == 0 ? MonitorUpdate.UNKNOWN : rate(lastRead, values[0], elapsed);
+                write = elapsed == 0 ? MonitorUpdate.UNKNOWN : rate(lastWrite, values[1], elapsed);
+                lastRead = values[0];
+                lastWrite = values[1];
+            } else {
+                ioAvailable = false;
+            }
+        }
+
+        long rx = MonitorUpdate.UNKNOWN;
+        long tx = MonitorUpdate.UNKNOWN;
+        if (netAvailable) {
+            if (readNetDev()) {
+                rx = elapsed == 0 ? MonitorUpdate.UNKNOWN : rate(lastRx, values[0], elapsed);
+                tx = elapsed == 0 ? MonitorUpdate.UNKNOWN : rate(lastTx, values[1], elapsed);
+                lastRx = values[0];
+                lastTx = values[1];
+            } else {
+                netAvailable = false;
+            }
+        }
+
+        MonitorUpdate.ThreadUsage[] usage = null;
+        if (tasksAvailable) {
+            if (readTasks()) usage = elapsed == 0 ? null : threadUsage(elapsed);
+            else tasksAvailable = false;
+        }
+
+        update.extended(read, write, rx, tx, usage);
+    }
+
+    private int read(@NonNull String path) {
+        try (FileInputStream in = new FileInputStream(path)) {
+            int len = 0;
+            int read;
+            while ((read = in.read(buf, len, buf.length - len)) != -1) {
+                len += read;
+                if (len == buf.length) {
+                    byte[] grown = new byte[buf.length * 2];
+                    System.arraycopy(buf, 0, grown, 0, len);
+                    buf = grown;
+                }
+            }
+
+            return len;
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    private boolean readIo() {
+        int len = read(base + "io");
+        if (len == -1) {
+            Logger.w(TAG, "Cannot read " + base + "io, disk I/O won't be sampled.");
+            return false;
+        }
+
+        values[0] = values[1] = MonitorUpdate.UNKNOWN;
+        for (int i = 0; i < len; ) {
+            if (startsWith(buf, i, len, READ_BYTES))
+                values[0] = parseLong(buf, skipSpaces(buf, i + READ_BYTES.length, len), len);
+            else if (startsWith(buf, i, len, WRITE_BYTES))
+                values[1] = parseLong(buf, skipSpaces(buf, i + WRITE_BYTES.length, len), len);
+
+            while (i < len && buf[i] != '\n') i++;
+            i++;
+        }
+
+        return values[0] != MonitorUpdate.UNKNOWN && values[1] != MonitorUpdate.UNKNOWN;
+    }
+
+    private boolean readNetDev() {
+        int len = read(base + "net/dev");
+        if (len == -1) {
+            Logger.w(TAG, "Cannot read " + base + "net/dev, traffic won't be sampled.");
+            return false;
+        }
+
+        long rx = 0;
+        long tx = 0;
+        for (int i = 0; i < len; ) {
+            int lineEnd = i;
+            while (lineEnd < len && buf[lineEnd] != '\n') lineEnd++;
+
+            int colon = i;
+            while (colon < lineEnd && buf[colon] != ':') colon++;
+
+            int name = skipSpaces(buf, i, colon);
+            boolean loopback = colon - name == 2 && buf[name] == 'l' && buf[name + 1] == 'o';
+            if (colon < lineEnd && !loopback) {
+                int j = colon + 1;
+                for (int field = 0; field < 9 && j < lineEnd; field++) {
+                    j = skipSpaces(buf, j, lineEnd);
+                    if (field == 0) rx += parseLong(buf, j, lineEnd);
+                    else if (field == 8) tx += parseLong(buf, j, lineEnd);
+                    j = skipToken(buf, j, lineEnd);
+                }
+            }
+
+            i = lineEnd + 1;
+        }
+
+        values[0] = rx;
+        values[1] = tx;
+        return true;
+    }
+
+    private boolean readTasks() {
+        String[] list = taskDir.list();
+        if (list == null) {
+            Logger.w(TAG, "Cannot list " + taskDir + ", thread usage won't be sampled.");
+            return false;
+        }
+
+        int[] swapTids = prevTids;
+        long[] swapTicks = prevTicks;
+        String[] swapNames = prevNames;
+        prevTids = tids;
+        prevTicks = ticks;
+        prevNames = names;
+        prevThreads = threads;
+        tids = swapTids;
+        ticks = swapTicks;
+        names = swapNames;
+        threads = 0;
+
+        int count = Math.min(list.length, MAX_THREADS);
+        if (tids.length < count) {
+            tids = new int[count];
+            ticks = new long[count];
+            names = new String[count];
+        }
+
+        for (int k = 0; k < count; k++) {
+            int len = read(base + "task/" + list[k] + "/stat");
+            if (len <= 0) continue;
+
+            int open = 0;
+            while (open < len && buf[open] != '(') open++;
+            int close = len - 1;
+            while (close > open && buf[close] != ')') close--;
+            if (close <= open) continue;
+
+            int tid = (int) parseLong(buf, 0, open);
+            int i = close + 1;
+            for (int field = 3; field < 14 && i < len; field++)
+                i = skipToken(buf, skipSpaces(buf, i, len), len);
+
+            i = skipSpaces(buf, i, len);
+            long utime = parseLong(buf, i, len);
+            i = skipSpaces(buf, skipToken(buf, i, len), len);
+            long stime = parseLong(buf, i, len);
+
+            tids[threads] = tid;
+            ticks[threads] = utime + stime;
+            names[threads] = nameOf(tid, buf, open + 1, close);
+            threads++;
+        }
+
+        return true;
+    }
+
+    private static boolean sameName(@Nullable String name, @NonNull byte[] buf, int start, int end) {
+        if (name == null || name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++)
+            if (name.charAt(i) != buf[start + i]) return false;
+
+        return true;
+    }
+
+    @NonNull
+    private String nameOf(int tid, @NonNull byte[] buf, int start, int end) {
+        for (int i = 0; i < prevThreads; i++)
+            if (prevTids[i] == tid && sameName(prevNames[i], buf, start, end))
+                return prevNames[i];
+
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    @NonNull
+    private MonitorUpdate.ThreadUsage[] threadUsage(long elapsed) {
+        MonitorUpdate.ThreadUsage[] usage = new MonitorUpdate.ThreadUsage[threads];
+        for (int i = 0; i < threads; i++) {
+            long previous = -1;
+            for (int j = 0; j < prevThreads; j++) {
+                if (prevTids[j] == tids[i]) {
+                    previous = prevTicks[j];
+                    break;
+                }
+            }
+
+            long delta = previous == -1 ? 0 : Math.max(0, ticks[i] - previous);
+            int cpu = (int) (delta * 100 * MonitorUpdate.CPU_SCALE * TimeUnit.SECONDS.toNanos(1) / (CLOCK_TICKS * elapsed));
+            usage[i] = new MonitorUpdate.ThreadUsage(tids[i], names[i], cpu);
+        }
+
+        return usage;
+    }
+}
@@ -0,0 +1,184 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+final class ProgressParser {
+
+    private ProgressParser() {
+    }
+
+    static boolean isReadout(@NonNull String line) {
+        return line.startsWith("[#") || line.startsWith("[DL:");
+    }
+
+    static int parse(@NonNull String line, @NonNull List<DownloadProgress> out) {
+        int count = 0;
+        int open = line.indexOf("[#");
+        while (open != -1) {
+            int close = line.indexOf(']', open);
+            if (close == -1) break;
+
+            DownloadProgress progress = parseSegment(line, open + 2, close);
+            if (progress != null) {
+                out.add(progress);
+                count++;
+            }
+
+            open = line.indexOf("[#", close);
+        }
+
+        return count;
+    }
+
+    @Nullable
+    private static DownloadProgress parseSegment(@NonNull String line, int start, int end) {
+        int space = line.indexOf(' ', start);
+        if (space == -1 || space >= end || space == start) return null;
+
+        String gid = line.substring(start, space);
+        long completed = DownloadProgress.UNKNOWN;
+        long total = DownloadProgress.UNKNOWN;
+        int connections = 0;
+        int seeders = DownloadProgress.UNKNOWN;
+        long downloadSpeed = 0;
+        long uploadSpeed = 0;
+        long eta = DownloadProgress.UNKNOWN;
+        boolean seeding = false;
+
+        int i = space + 1;
+        while (i < end) {
+            int next = line.indexOf(' ', i);
+            if (next == -1 || next > end) next = end;
+
+            if (line.startsWith("CN:", i)) {
+                connections = (int) parseNumber(line, i + 3, next);
+            } else if (line.startsWith("SD:", i)) {
+                seeders = (int) parseNumber(line, i + 3, next);
+            } else if (line.startsWith("DL:", i)) {
+                downloadSpeed = parseSize(line, i + 3, next);
+            } else if (line.startsWith("UL:", i)) {
+                int paren = line.indexOf('(', i);
+                uploadSpeed = parseSize(line, i + 3, paren == -1 || paren > next ? next : paren);
+            } else if (line.startsWith("ETA:", i)) {
+                eta = parseDuration(line, i + 4, next);
+            } else if (line.startsWith("SEED(", i)) {
+                seeding = true;
+            } else if (completed == DownloadProgress.UNKNOWN) {
+                int slash = line.indexOf('/', i);
+                if (slash == -1 || slash > next) {
+                    completed = parseSize(line, i, next);
+                } else {
+                    int paren = line.indexOf('(', slash);
+                    completed = parseSize(line, i, slash);
+                    total = parseSize(line, slash + 1, paren == -1 || paren > next ? next : paren);
+                }
+            }
+
+            i = next + 1;
+        }
+
+        if (completed == DownloadProgress.UNKNOWN && !seeding) return null;
+        return new DownloadProgress(gid, completed, total, connections, seeders, downloadSpeed, uploadSpeed, eta, seeding);
+    }
+
+    private static long parseNumber(@NonNull String str, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    static long parseSize(@NonNull String str, int start, int end) {
+        long integer = 0;
+        long fraction = 0;
+        long scale = 1;
+        boolean digits = false;
+        boolean decimal = false;
+        int i = start;
+        for (; i < end; i++) {
+            char c = str.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+                if (decimal) {
+                    fraction = fraction * 10 + (c - '0');
+                    scale *= 10;
+                } else {
+                    integer = integer * 10 + (c - '0');
+                }
+            } else if (c == '.' && !decimal) {
+                decimal = true;
+            } else {
+                break;
+            }
+        }
+
+        if (!digits) return DownloadProgress.UNKNOWN;
+
+        int shift;
+        switch (i < end ? str.charAt(i) : 'B') {
+            case 'K':
+                shift = 10;
+                break;
+            case 'M':
+                shift = 20;
+                break;
+            case 'G':
+                shift = 30;
+                break;
+            case 'T':
+                shift = 40;
+                break;
+            case 'B':
+                shift = 0;
+                break;
+            default:
+                return DownloadProgress.UNKNOWN;
+        }
+
+        return (integer << shift) + (fraction << shift) / scale;
+    }
+
+    static long parseDuration(@NonNull String str, int start, int end) {
+        long seconds = 0;
+        long value = 0;
+        boolean digits = false;
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits = true;
+                continue;
+            }
+
+            if (!digits) return DownloadProgress.UNKNOWN;
+            switch (c) {
+                case 'd':
+                    seconds += value * 86400;
+                    break;
+                case 'h':
+                    seconds += value * 3600;
+                    break;
+                case 'm':
+                    seconds += value * 60;
+                    break;
+                case 's':
+                    seconds += value;
+                    break;
+                default:
+                    return DownloadProgress.UNKNOWN;
+            }
+
+            value = 0;
+            digits = false;
+        }
+
+        return digits ? DownloadProgress.UNKNOWN : seconds;
+    }
+}
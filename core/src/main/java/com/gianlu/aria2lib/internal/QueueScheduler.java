@@ -0,0 +1,396 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public final class QueueScheduler {
+    private static final String TAG = QueueScheduler.class.getSimpleName();
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+    private static final long GLOBAL_CACHE_MS = TimeUnit.SECONDS.toMillis(10);
+    private static final long AGING_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_WAITING = 1000;
+    private static final long MIN_LIMIT = 16 * 1024;
+    private static final float HEADROOM = 1.25f;
+    private static final float CAPACITY_DECAY = 0.95f;
+    private static final float HYSTERESIS = 0.1f;
+    private static final float BOUND_RATIO = 0.8f;
+    private final Aria2Cluster cluster;
+    private final Executor executor = Scheduler.get().serial("aria2-queueScheduler");
+    private final ScheduledFuture<?> ticks;
+    private final Map<Integer, InstanceState> states = new HashMap<>();
+    private final Metrics.Counter reordered;
+    private final Metrics.Counter limited;
+    private final Metrics.Counter preempted;
+    private volatile boolean closed = false;
+
+    public QueueScheduler(@NonNull Aria2Cluster cluster) {
+        this.cluster = cluster;
+
+        Metrics metrics = Metrics.get();
+        reordered = metrics.counter("aria2_queue_moves_total", "Waiting downloads moved by the queue scheduler.");
+        limited = metrics.counter("aria2_queue_limit_changes_total", "Per-download speed limits changed by the queue scheduler.");
+        preempted = metrics.counter("aria2_queue_preemptions_total", "Low priority downloads paused to make room for urgent ones.");
+
+        ticks = Scheduler.get().scheduleWithFixedDelay(() -> executor.execute(this::tick), TICK_INTERVAL, TICK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private static long parseLong(@Nullable String str) {
+        if (str == null) return 0;
+
+        try {
+            return Long.parseLong(str);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static long parseSpeed(@Nullable String str) {
+        if (str == null || str.isEmpty()) return 0;
+
+        long unit = 1;
+        char last = Character.toUpperCase(str.charAt(str.length() - 1));
+        if (last == 'K') unit = 1024;
+        else if (last == 'M') unit = 1024 * 1024;
+
+        return parseLong(unit == 1 ? str : str.substring(0, str.length() - 1)) * unit;
+    }
+
+    private static boolean seeding(@NonNull Map<String, String> download) {
+        long total = parseLong(download.get("totalLength"));
+        return total > 0 && parseLong(download.get("completedLength")) >= total;
+    }
+
+    public void assign(int instance, @NonNull String gid, @NonNull Priority priority) {
+        executor.execute(() -> {
+            if (closed) return;
+
+            InstanceState state = state(instance);
+            Entry entry = state.entries.get(gid);
+            if (entry == null) state.entries.put(gid, new Entry(priority));
+            else entry.priority = priority;
+
+            tick(instance, state);
+        });
+    }
+
+    public void assign(@NonNull DownloadRouter.Routed routed, @NonNull Priority priority) {
+        for (String gid : routed.gids) assign(routed.instance, gid, priority);
+    }
+
+    public void release(int instance, @NonNull String gid) {
+        executor.execute(() -> {
+            InstanceState state = states.get(instance);
+            Entry entry = state == null ? null : state.entries.remove(gid);
+            if (entry == null) return;
+
+            Aria2Rpc rpc = rpc(instance);
+            if (rpc != null) clearLimit(rpc, gid, entry);
+            if (state.preempted.remove(gid) && rpc != null) unpause(rpc, gid);
+        });
+    }
+
+    public void reschedule() {
+        executor.execute(this::tick);
+    }
+
+    public void close() {
+        closed = true;
+        ticks.cancel(false);
+
+        executor.execute(() -> {
+            for (Map.Entry<Integer, InstanceState> state : states.entrySet()) {
+                Aria2Rpc rpc = rpc(state.getKey());
+                if (rpc == null) continue;
+
+                for (Map.Entry<String, Entry> entry : state.getValue().entries.entrySet())
+                    clearLimit(rpc, entry.getKey(), entry.getValue());
+
+                for (String gid : state.getValue().preempted) unpause(rpc, gid);
+            }
+
+            states.clear();
+        });
+    }
+
+    @NonNull
+    private InstanceState state(int instance) {
+        InstanceState state = states.get(instance);
+        if (state == null) states.put(instance, state = new InstanceState());
+        return state;
+    }
+
+    @Nullable
+    private Aria2Rpc rpc(int instance) {
+        for (Aria2 aria2 : cluster.instances())
+            if (aria2.id() == instance) return aria2.isRunning() ? aria2.rpc() : null;
+
+        return null;
+    }
+
+    private void tick() {
+        if (closed) return;
+
+        for (Aria2 aria2 : cluster.instances())
+            tick(aria2.id(), state(aria2.id()));
+    }
+
+    private void tick(int instance, @NonNull InstanceState state) {
+        Aria2Rpc rpc = rpc(instance);
+        if (rpc == null) return;
+
+        try {
+            schedule(rpc, state);
+        } catch (IOException | RuntimeException ex) {
+            Logger.w(TAG, "Failed scheduling queue of instance " + instance, ex);
+        }
+    }
+
+    private void schedule(@NonNull Aria2Rpc rpc, @NonNull InstanceState state) throws IOException {
+        long now = System.currentTimeMillis();
+        if (now - state.globalAt > GLOBAL_CACHE_MS) {
+            Map<String, String> global = rpc.getGlobalOption();
+            state.maxOverall = parseSpeed(global.get("max-overall-download-limit"));
+            state.maxConcurrent = Math.max(1, (int) parseLong(global.get("max-concurrent-downloads")));
+            state.globalAt = now;
+        }
+
+        List<Map<String, String>> active = rpc.tellActive("gid", "status", "downloadSpeed", "totalLength", "completedLength");
+        List<Map<String, String>> waiting = rpc.tellWaiting(0, MAX_WAITING, "gid", "status");
+
+        Set<String> seen = new HashSet<>();
+        for (Map<String, String> download : active) {
+            Entry entry = entry(state, download.get("gid"), now);
+            entry.waitingSince = 0;
+            seen.add(download.get("gid"));
+        }
+
+        for (Map<String, String> download : waiting) {
+            Entry entry = entry(state, download.get("gid"), now);
+            if (entry.waitingSince == 0) entry.waitingSince = now;
+            seen.add(download.get("gid"));
+        }
+
+        if (waiting.size() < MAX_WAITING) {
+            Iterator<String> iterator = state.entries.keySet().iterator();
+            while (iterator.hasNext()) {
+                String gid = iterator.next();
+                if (!seen.contains(gid)) {
+                    iterator.remove();
+                    state.preempted.remove(gid);
+                }
+            }
+        }
+
+        reorder(rpc, state, waiting, now);
+        preempt(rpc, state, active, waiting);
+        share(rpc, state, active);
+    }
+
+    @NonNull
+    private Entry entry(@NonNull InstanceState state, @NonNull String gid, long now) {
+        Entry entry = state.entries.get(gid);
+        if (entry == null) {
+            state.entries.put(gid, entry = new Entry(Priority.NORMAL));
+            entry.waitingSince = now;
+        }
+
+        return entry;
+    }
+
+    private void reorder(@NonNull Aria2Rpc rpc, @NonNull InstanceState state, @NonNull List<Map<String, String>> waiting, long now) throws IOException {
+        List<String> current = new ArrayList<>(waiting.size());
+        for (Map<String, String> download : waiting) current.add(download.get("gid"));
+
+        List<String> desired = new ArrayList<>(current);
+        Map<String, Integer> ranks = new HashMap<>(current.size());
+        for (String gid : current) ranks.put(gid, state.entries.get(gid).rank(now));
+        Collections.sort(desired, (a, b) -> Integer.compare(ranks.get(a), ranks.get(b)));
+
+        for (int i = 0; i < desired.size(); i++) {
+            String gid = desired.get(i);
+            if (gid.equals(current.get(i))) continue;
+
+            rpc.changePosition(gid, i, "POS_SET");
+            current.remove(gid);
+            current.add(i, gid);
+            reordered.inc();
+        }
+    }
+
+    private void preempt(@NonNull Aria2Rpc rpc, @NonNull InstanceState state, @NonNull List<Map<String, String>> active, @NonNull List<Map<String, String>> waiting) throws IOException {
+        int urgent = 0;
+        for (Map<String, String> download : waiting) {
+            if (!"waiting".equals(download.get("status"))) continue;
+            if (state.entries.get(download.get("gid")).priority == Priority.URGENT) urgent++;
+        }
+
+        if (urgent == 0) {
+            for (String gid : state.preempted) unpause(rpc, gid);
+            state.preempted.clear();
+            return;
+        }
+
+        if (active.size() < state.maxConcurrent) return;
+
+        List<String> victims = new ArrayList<>();
+        for (Map<String, String> download : active) {
+            String gid = download.get("gid");
+            Priority priority = state.entries.get(gid).priority;
+            if (state.preempted.contains(gid)) urgent--; // Still pausing
+            else if (priority == Priority.BULK || priority == Priority.SEED) victims.add(gid);
+        }
+
+        Collections.sort(victims, (a, b) -> Integer.compare(state.entries.get(b).priority.ordinal(), state.entries.get(a).priority.ordinal()));
+        for (int i = 0; i < Math.min(urgent, victims.size()); i++) {
+            String gid = victims.get(i);
+            try {
+                rpc.pause(gid);
+                state.preempted.add(gid);
+                preempted.inc();
+            } catch (Aria2Rpc.RpcException ex) {
+                Logger.w(TAG, "Failed preempting " + gid, ex);
+            }
+        }
+    }
+
+    private void share(@NonNull Aria2Rpc rpc, @NonNull InstanceState state, @NonNull List<Map<String, String>> active) throws IOException {
+        List<Map<String, String>> downloading = new ArrayList<>(active.size());
+        Set<Priority> classes = new HashSet<>();
+        long total = 0;
+        for (Map<String, String> download : active) {
+            Entry entry = state.entries.get(download.get("gid"));
+            long speed = parseLong(download.get("downloadSpeed"));
+            entry.speed = speed;
+            total += speed;
+
+            if (seeding(download)) {
+                clearLimit(rpc, download.get("gid"), entry);
+            } else {
+                downloading.add(download);
+                classes.add(entry.priority);
+            }
+        }
+
+        state.capacity = Math.max(total, (long) (state.capacity * CAPACITY_DECAY));
+        if (classes.size() < 2) {
+            for (Map<String, String> download : downloading)
+                clearLimit(rpc, download.get("gid"), state.entries.get(download.get("gid")));
+            return;
+        }
+
+        long budget = state.maxOverall > 0 ? state.maxOverall : (long) (state.capacity * HEADROOM);
+        Map<String, Long> limits = allocate(state, downloading, budget);
+        for (Map.Entry<String, Long> limit : limits.entrySet())
+            setLimit(rpc, limit.getKey(), state.entries.get(limit.getKey()), limit.getValue());
+    }
+
+    @NonNull
+    private static Map<String, Long> allocate(@NonNull InstanceState state, @NonNull List<Map<String, String>> downloading, long budget) {
+        List<String> gids = new ArrayList<>(downloading.size());
+        Map<String, Long> demands = new HashMap<>(downloading.size());
+        long weights = 0;
+        for (Map<String, String> download : downloading) {
+            String gid = download.get("gid");
+            Entry entry = state.entries.get(gid);
+
+            boolean bound = entry.limit <= 0 || entry.speed >= entry.limit * BOUND_RATIO;
+            demands.put(gid, bound ? Long.MAX_VALUE : Math.max(MIN_LIMIT, entry.speed * 2));
+            weights += entry.priority.weight;
+            gids.add(gid);
+        }
+
+        Collections.sort(gids, (a, b) -> Double.compare(demands.get(a) / (double) state.entries.get(a).priority.weight,
+                demands.get(b) / (double) state.entries.get(b).priority.weight));
+
+        Map<String, Long> limits = new HashMap<>(gids.size());
+        long remaining = budget;
+        for (String gid : gids) {
+            int weight = state.entries.get(gid).priority.weight;
+            long share = weights == 0 ? remaining : (long) (remaining * (weight / (double) weights));
+            long limit = Math.max(MIN_LIMIT, Math.min(demands.get(gid), share));
+            limits.put(gid, limit);
+            remaining = Math.max(0, remaining - limit);
+            weights -= weight;
+        }
+
+        return limits;
+    }
+
+    private void setLimit(@NonNull Aria2Rpc rpc, @NonNull String gid, @NonNull Entry entry, long limit) throws IOException {
+        if (entry.limit > 0 && Math.abs(limit - entry.limit) <= entry.limit * HYSTERESIS) return;
+
+        rpc.changeOption(gid, Collections.singletonMap("max-download-limit", String.valueOf(limit)));
+        entry.limit = limit;
+        limited.inc();
+    }
+
+    private void clearLimit(@NonNull Aria2Rpc rpc, @NonNull String gid, @NonNull Entry entry) {
+        if (entry.limit <= 0) return;
+
+        try {
+            rpc.changeOption(gid, Collections.singletonMap("max-download-limit", "0"));
+            limited.inc();
+        } catch (IOException ex) {
+            Logger.w(TAG, "Failed clearing limit of " + gid, ex);
+        }
+
+        entry.limit = 0;
+    }
+
+    private static void unpause(@NonNull Aria2Rpc rpc, @NonNull String gid) {
+        try {
+            rpc.unpause(gid);
+        } catch (IOException ex) {
+            Logger.w(TAG, "Failed resuming " + gid, ex);
+        }
+    }
+
+    public enum Priority {
+        URGENT(16), NORMAL(4), BULK(1), SEED(1);
+
+        public final int weight;
+
+        Priority(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static class Entry {
+        Priority priority;
+        long waitingSince = 0;
+        long speed = 0;
+        long limit = 0;
+
+        Entry(@NonNull Priority priority) {
+            this.priority = priority;
+        }
+
+        int rank(long now) {
+            if (waitingSince == 0 || priority == Priority.URGENT) return priority.ordinal();
+            return Math.max(Priority.NORMAL.ordinal(), priority.ordinal() - (int) ((now - waitingSince) / AGING_MS));
+        }
+    }
+
+    private static class InstanceState {
+        final Map<String, Entry> entries = new HashMap<>();
+        final Set<String> preempted = new LinkedHashSet<>();
+        long globalAt = 0;
+        long maxOverall = 0;
+        int maxConcurrent = 5;
+        long capacity = 0;
+    }
+}
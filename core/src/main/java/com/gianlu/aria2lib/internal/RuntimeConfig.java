@@ -0,0 +1,187 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class RuntimeConfig implements ConfigProvider {
+    public final long version;
+    private final int rpcPort;
+    private final String rpcToken;
+    private final boolean rpcListenAll;
+    private final boolean rpcAllowOriginAll;
+    private final boolean checkCertificate;
+    private final boolean saveSession;
+    private final boolean showPerformance;
+    private final int monitorDelay;
+    private final String logLevel;
+    private final int summaryInterval;
+    private final boolean storageTuning;
+    private final long spaceLowWatermark;
+    private final long spaceHighWatermark;
+    private final String outputDirectory;
+    private final Map<String, String> customOptions;
+    private final int instances;
+    private final List<File> instanceDirectories;
+    private final int metricsPort;
+    private final boolean autoTuning;
+    private final boolean memoryGovernor;
+    private final boolean broadcastMessages;
+
+    private RuntimeConfig(long version, @NonNull ConfigProvider source) {
+        this.version = version;
+        this.rpcPort = source.rpcPort();
+        this.rpcToken = source.rpcToken();
+        this.rpcListenAll = source.rpcListenAll();
+        this.rpcAllowOriginAll = source.rpcAllowOriginAll();
+        this.checkCertificate = source.checkCertificate();
+        this.saveSession = source.saveSession();
+        this.showPerformance = source.showPerformance();
+        this.monitorDelay = source.monitorDelay();
+        this.logLevel = source.logLevel();
+        this.summaryInterval = source.summaryInterval();
+        this.storageTuning = source.storageTuning();
+        this.spaceLowWatermark = source.spaceLowWatermark();
+        this.spaceHighWatermark = source.spaceHighWatermark();
+        this.outputDirectory = source.outputDirectory();
+        this.customOptions = Collections.unmodifiableMap(new HashMap<>(source.customOptions()));
+        this.instances = source.instances();
+        this.instanceDirectories = Collections.unmodifiableList(new ArrayList<>(source.instanceDirectories()));
+        this.metricsPort = source.metricsPort();
+        this.autoTuning = source.autoTuning();
+        this.memoryGovernor = source.memoryGovernor();
+        this.broadcastMessages = source.broadcastMessages();
+    }
+
+    @NonNull
+    static RuntimeConfig compile(long version, @NonNull ConfigProvider source) {
+        return new RuntimeConfig(version, source);
+    }
+
+    @Override
+    public int rpcPort() {
+        return rpcPort;
+    }
+
+    @Nullable
+    @Override
+    public String rpcToken() {
+        return rpcToken;
+    }
+
+    @Override
+    public boolean rpcListenAll() {
+        return rpcListenAll;
+    }
+
+    @Override
+    public boolean rpcAllowOriginAll() {
+        return rpcAllowOriginAll;
+    }
+
+    @Override
+    public boolean checkCertificate() {
+        return checkCertificate;
+    }
+
+    @Override
+    public boolean saveSession() {
+        return saveSession;
+    }
+
+    @Override
+    public boolean showPerformance() {
+        return showPerformance;
+    }
+
+    @Override
+    public int monitorDelay() {
+        return monitorDelay;
+    }
+
+    @NonNull
+    @Override
+    public String logLevel() {
+        return logLevel;
+    }
+
+    @Override
+    public int summaryInterval() {
+        return summaryInterval;
+    }
+
+    @Override
+    public boolean storageTuning() {
+        return storageTuning;
+    }
+
+    @Override
+    public long spaceLowWatermark() {
+        return spaceLowWatermark;
+    }
+
+    @Override
+    public long spaceHighWatermark() {
+        return spaceHighWatermark;
+    }
+
+    @NonNull
+    @Override
+    public String outputDirectory() {
+        return outputDirectory;
+    }
+
+    @NonNull
+    @Override
+    public Map<String, String> customOptions() {
+        return customOptions;
+    }
+
+    @Override
+    public int instances() {
+        return instances;
+    }
+
+    @NonNull
+    @Override
+    public List<File> instanceDirectories() {
+        return instanceDirectories;
+    }
+
+    @Override
+    public int metricsPort() {
+        return metricsPort;
+    }
+
+    @Override
+    public boolean autoTuning() {
+        return autoTuning;
+    }
+
+    @Override
+    public boolean memoryGovernor() {
+        return memoryGovernor;
+    }
+
+    @Override
+    public boolean broadcastMessages() {
+        return broadcastMessages;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "RuntimeConfig{version=" + version + ", rpcPort=" + rpcPort + ", instances=" + instances + ", outputDirectory=" + outputDirectory
+                + ", logLevel=" + logLevel + ", showPerformance=" + showPerformance + ", customOptions=" + customOptions.size() + '}';
+    }
+
+    public interface Listener {
+        void onConfigChanged(@NonNull RuntimeConfig previous, @NonNull RuntimeConfig current);
+    }
+}
@@ -0,0 +1,175 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class Scheduler {
+    private static final String TAG = Scheduler.class.getSimpleName();
+    private static final int TIMER_THREADS = 2;
+    private static final int MAX_BLOCKING_THREADS = 32;
+    private static Scheduler instance;
+    private final ScheduledThreadPoolExecutor timer;
+    private final ExecutorService blocking;
+    private final boolean virtual;
+    private final AtomicInteger running = new AtomicInteger(0);
+
+    private Scheduler() {
+        timer = new ScheduledThreadPoolExecutor(TIMER_THREADS, factory("aria2-scheduler-"));
+        timer.setRemoveOnCancelPolicy(true);
+
+        ExecutorService virtualExecutor = virtualExecutor();
+        if (virtualExecutor != null) {
+            blocking = virtualExecutor;
+            virtual = true;
+        } else {
+            // Excess tasks wait in the queue instead of being rejected, permanent loops use runDedicated
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_BLOCKING_THREADS, MAX_BLOCKING_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory("aria2-io-"));
+            pool.allowCoreThreadTimeOut(true);
+            blocking = pool;
+            virtual = false;
+        }
+
+        Metrics.get().gauge("aria2_scheduler_tasks", "Blocking tasks currently running on the shared scheduler.", running::get);
+    }
+
+    @NonNull
+    public static synchronized Scheduler get() {
+        if (instance == null) instance = new Scheduler();
+        return instance;
+    }
+
+    @Nullable
+    private static ExecutorService virtualExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    @NonNull
+    private static ThreadFactory factory(@NonNull String prefix) {
+        AtomicInteger count = new AtomicInteger(0);
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtual;
+    }
+
+    @NonNull
+    public ScheduledExecutorService timer() {
+        return timer;
+    }
+
+    @NonNull
+    private Runnable named(@NonNull String name, @NonNull Runnable task) {
+        return () -> {
+            Thread thread = Thread.currentThread();
+            String oldName = thread.getName();
+            thread.setName(name);
+            running.incrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                Logger.e(TAG, "Task " + name + " failed.", ex);
+            } finally {
+                running.decrementAndGet();
+                thread.setName(oldName);
+            }
+        };
+    }
+
+    public void runBlocking(@NonNull String name, @NonNull Runnable task) {
+        blocking.execute(named(name, task));
+    }
+
+    public void runDedicated(@NonNull String name, @NonNull Runnable task) {
+        if (virtual) {
+            blocking.execute(named(name, task));
+        } else {
+            Thread thread = new Thread(named(name, task), name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @NonNull
+    public ScheduledFuture<?> schedule(@NonNull Runnable task, long delay, @NonNull TimeUnit unit) {
+        return timer.schedule(guard(task), delay, unit);
+    }
+
+    @NonNull
+    public ScheduledFuture<?> scheduleWithFixedDelay(@NonNull Runnable task, long initialDelay, long delay, @NonNull TimeUnit unit) {
+        return timer.scheduleWithFixedDelay(guard(task), initialDelay, delay, unit);
+    }
+
+    @NonNull
+    public Executor serial(@NonNull String name) {
+        return new SerialExecutor(task -> runBlocking(name, task));
+    }
+
+    @NonNull
+    public TaskGroup group(@NonNull String name) {
+        return new TaskGroup(this, name);
+    }
+
+    @NonNull
+    private Runnable guard(@NonNull Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                Logger.e(TAG, "Scheduled task failed.", ex);
+            }
+        };
+    }
+
+    private static class SerialExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private final Executor executor;
+        private Runnable active;
+
+        SerialExecutor(@NonNull Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void execute(@NonNull Runnable task) {
+            tasks.add(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    Logger.e(TAG, "Serial task failed.", ex);
+                } finally {
+                    next();
+                }
+            });
+
+            if (active == null) next();
+        }
+
+        private synchronized void next() {
+            if ((active = tasks.poll()) != null) executor.execute(active);
+        }
+    }
+}
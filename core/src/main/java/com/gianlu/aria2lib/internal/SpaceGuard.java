@@ -0,0 +1,208 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public final class SpaceGuard implements Aria2.MessageListener {
+    private static final String TAG = SpaceGuard.class.getSimpleName();
+    private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    private static final int MAX_WAITING = 1000;
+    private final Aria2Cluster cluster;
+    private final long low;
+    private final long high;
+    private final Executor executor = Scheduler.get().serial("aria2-spaceGuard");
+    private final ScheduledFuture<?> checks;
+    private final Map<Integer, InstanceState> states = new HashMap<>();
+
+    SpaceGuard(@NonNull Aria2Cluster cluster, long low, long high) {
+        this.cluster = cluster;
+        this.low = low;
+        this.high = Math.max(low, high);
+
+        checks = Scheduler.get().scheduleWithFixedDelay(() -> executor.execute(this::check), 0, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private static long remaining(@NonNull Map<String, String> download) {
+        try {
+            return Math.max(0, Long.parseLong(download.get("totalLength")) - Long.parseLong(download.get("completedLength")));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void onMessage(@NonNull Message msg) {
+        if (msg.type() != Message.Type.PROCESS_ERROR || !(msg.object() instanceof String)) return;
+
+        String text = (String) msg.object();
+        if (text.contains("No space left") || text.contains("ENOSPC") || text.contains("Not enough disk space"))
+            executor.execute(this::check);
+    }
+
+    public void close() {
+        checks.cancel(false);
+    }
+
+    private void check() {
+        for (Aria2 aria2 : cluster.instances()) {
+            String dir = aria2.outputDirectory();
+            Aria2Rpc rpc = aria2.rpc();
+            if (dir == null || rpc == null || !aria2.isRunning()) continue;
+
+            InstanceState state = states.get(aria2.id());
+            if (state == null) states.put(aria2.id(), state = new InstanceState());
+
+            try {
+                check(aria2, rpc, new File(dir), state);
+            } catch (IOException | RuntimeException ex) {
+                Logger.w(TAG, "Failed checking free space of instance " + aria2.id(), ex);
+            }
+        }
+    }
+
+    private void check(@NonNull Aria2 aria2, @NonNull Aria2Rpc rpc, @NonNull File dir, @NonNull InstanceState state) throws IOException {
+        long free = dir.getUsableSpace();
+        List<Map<String, String>> active = rpc.tellActive("gid", "totalLength", "completedLength");
+
+        long remaining = 0;
+        for (Map<String, String> download : active) remaining += remaining(download);
+
+        Level level;
+        if (free < low) level = Level.CRITICAL;
+        else if (free - remaining < low) level = Level.LOW;
+        else level = Level.OK;
+
+        List<String> paused = new ArrayList<>();
+        List<String> resumed = new ArrayList<>();
+        String action;
+        if (level == Level.CRITICAL) {
+            if (state.pausedAll) {
+                action = null;
+            } else {
+                for (Map<String, String> download : active) paused.add(download.get("gid"));
+                for (Map<String, String> download : rpc.tellWaiting(0, MAX_WAITING, "gid", "status"))
+                    if ("waiting".equals(download.get("status"))) paused.add(download.get("gid"));
+
+                rpc.pauseAll();
+                state.pausedAll = true;
+                state.paused.addAll(paused);
+                action = "pauseAll";
+            }
+        } else if (level == Level.LOW) {
+            List<Map<String, String>> largest = new ArrayList<>(active);
+            Collections.sort(largest, (a, b) -> Long.compare(remaining(b), remaining(a)));
+
+            long needed = remaining;
+            for (Map<String, String> download : largest) {
+                if (free - needed >= low) break;
+
+                String gid = download.get("gid");
+                rpc.pause(gid);
+                state.paused.add(gid);
+                paused.add(gid);
+                needed -= remaining(download);
+            }
+
+            action = paused.isEmpty() ? null : "pause";
+        } else if (free >= high && !state.paused.isEmpty()) {
+            long needed = remaining;
+            for (String gid : new ArrayList<>(state.paused)) {
+                long size;
+                try {
+                    size = remaining(rpc.tellStatus(gid, "totalLength", "completedLength"));
+                } catch (Aria2Rpc.RpcException ex) {
+                    state.paused.remove(gid);
+                    continue;
+                }
+
+                if (free - needed - size < low) continue;
+
+                try {
+                    rpc.unpause(gid);
+                    resumed.add(gid);
+                    needed += size;
+                } catch (Aria2Rpc.RpcException ex) {
+                    Logger.w(TAG, "Failed resuming " + gid, ex);
+                }
+
+                state.paused.remove(gid);
+            }
+
+            if (state.paused.isEmpty()) state.pausedAll = false;
+            action = resumed.isEmpty() ? null : "unpause";
+        } else {
+            action = null;
+        }
+
+        if (level != state.level || action != null) {
+            Level from = state.level;
+            state.level = level;
+
+            SpaceEvent event = new SpaceEvent(from, level, dir.getAbsolutePath(), free, remaining, low, high, action, paused, resumed, state.paused.size());
+            Logger.w(TAG, event.toString());
+
+            Message msg = Message.obtain(Message.Type.SPACE_LEVEL_CHANGED, level.ordinal(), event);
+            aria2.post(msg);
+        }
+    }
+
+    public enum Level {
+        OK, LOW, CRITICAL
+    }
+
+    private static class InstanceState {
+        final Set<String> paused = new LinkedHashSet<>();
+        Level level = Level.OK;
+        boolean pausedAll = false;
+    }
+
+    public static class SpaceEvent implements Serializable {
+        public final Level from;
+        public final Level to;
+        public final String directory;
+        public final long usableSpace;
+        public final long remaining;
+        public final long lowWatermark;
+        public final long highWatermark;
+        public final String action;
+        public final List<String> paused;
+        public final List<String> resumed;
+        public final int pausedByGuard;
+
+        SpaceEvent(@NonNull Level from, @NonNull Level to, @NonNull String directory, long usableSpace, long remaining, long lowWatermark, long highWatermark,
+                   @Nullable String action, @NonNull List<String> paused, @NonNull List<String> resumed, int pausedByGuard) {
+            this.from = from;
+            this.to = to;
+            this.directory = directory;
+            this.usableSpace = usableSpace;
+            this.remaining = remaining;
+            this.lowWatermark = lowWatermark;
+            this.highWatermark = highWatermark;
+            this.action = action;
+            this.paused = Collections.unmodifiableList(paused);
+            this.resumed = Collections.unmodifiableList(resumed);
+            this.pausedByGuard = pausedByGuard;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "SpaceEvent{from=" + from + ", to=" + to + ", directory=" + directory + ", usableSpace=" + usableSpace + ", remaining=" + remaining
+                    + ", action=" + action + ", paused=" + paused + ", resumed=" + resumed + ", pausedByGuard=" + pausedByGuard + '}';
+        }
+    }
+}
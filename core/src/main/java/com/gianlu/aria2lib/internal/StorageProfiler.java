@@ -0,0 +1,348 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public final class StorageProfiler {
+    private static final String TAG = StorageProfiler.class.getSimpleName();
+    private static final String STORE_NAME = "storage-profiles.json";
+    private static final Set<String> EXTENT_FILESYSTEMS = new HashSet<>(Arrays.asList("ext4", "f2fs", "xfs", "btrfs", "tmpfs"));
+    private static final Set<String> SLOW_ALLOCATION_FILESYSTEMS = new HashSet<>(Arrays.asList("fuse", "fuseblk", "sdcardfs", "esdfs", "vfat", "exfat", "texfat", "sdfat", "ntfs"));
+    private static final int WRITE_SIZE = 4 * 1024 * 1024;
+    private static final int WRITE_CHUNK = 64 * 1024;
+    private static final int FSYNC_ROUNDS = 8;
+    private static final long MIN_FREE_SPACE = 64L * 1024 * 1024;
+    private static final long SLOW_THROUGHPUT = 20L * 1024 * 1024;
+    private static final long SLOW_FSYNC_MICROS = TimeUnit.MILLISECONDS.toMicros(20);
+    private static StorageProfiler instance;
+    private final Map<String, Profile> profiles = new HashMap<>();
+    private final Set<String> measuring = new HashSet<>();
+    private File loadedFrom = null;
+
+    private StorageProfiler() {
+    }
+
+    @NonNull
+    public static synchronized StorageProfiler get() {
+        if (instance == null) instance = new StorageProfiler();
+        return instance;
+    }
+
+    @NonNull
+    private static String unescape(@NonNull String str) {
+        if (str.indexOf('\\') == -1) return str;
+
+        StringBuilder builder = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '\\' && i + 3 < str.length()) {
+                builder.append((char) Integer.parseInt(str.substring(i + 1, i + 4), 8));
+                i += 3;
+            } else {
+                builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static boolean isUnder(@NonNull String path, @NonNull String mountPoint) {
+        if (mountPoint.equals("/")) return true;
+        return path.equals(mountPoint) || (path.startsWith(mountPoint) && path.charAt(mountPoint.length()) == '/');
+    }
+
+    @NonNull
+    static Volume volumeOf(@NonNull File directory) {
+        String path;
+        try {
+            path = directory.getCanonicalPath();
+        } catch (IOException ex) {
+            path = directory.getAbsolutePath();
+        }
+
+        Volume best = null;
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/mountinfo"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // id parent major:minor root mount-point options [optional fields...] - fstype source super-options
+                String[] fields = line.split(" ");
+                if (fields.length < 5) continue;
+
+                String mountPoint = unescape(fields[4]);
+                if (!isUnder(path, mountPoint) || (best != null && best.mountPoint.length() > mountPoint.length()))
+                    continue;
+
+                String fsType = "unknown";
+                for (int i = 6; i < fields.length - 1; i++) {
+                    if (fields[i].equals("-")) {
+                        fsType = fields[i + 1];
+                        break;
+                    }
+                }
+
+                best = new Volume(fields[2], mountPoint, fsType);
+            }
+        } catch (IOException ex) {
+            Logger.w(TAG, "Cannot read mount table.", ex);
+        }
+
+        return best == null ? new Volume("unknown", "/", "unknown") : best;
+    }
+
+    @NonNull
+    private static Profile measure(@NonNull File directory, @NonNull Volume volume) throws IOException {
+        File file = File.createTempFile(".aria2-storage-", ".tmp", directory);
+        try {
+            byte[] chunk = new byte[WRITE_CHUNK];
+            long start = System.nanoTime();
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                for (int written = 0; written < WRITE_SIZE; written += chunk.length) out.write(chunk);
+                out.getFD().sync();
+            }
+            long writeNanos = Math.max(1, System.nanoTime() - start);
+
+            byte[] small = new byte[4096];
+            long fsyncNanos = 0;
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                for (int i = 0; i < FSYNC_ROUNDS; i++) {
+                    out.write(small);
+                    long before = System.nanoTime();
+                    out.getFD().sync();
+                    fsyncNanos += System.nanoTime() - before;
+                }
+            }
+
+            long throughput = WRITE_SIZE * TimeUnit.SECONDS.toNanos(1) / writeNanos;
+            long fsyncLatency = TimeUnit.NANOSECONDS.toMicros(fsyncNanos / FSYNC_ROUNDS);
+            return new Profile(volume, throughput, fsyncLatency, System.currentTimeMillis(), directory.getUsableSpace());
+        } finally {
+            if (!file.delete()) Logger.w(TAG, "Failed deleting " + file);
+        }
+    }
+
+    @Nullable
+    private static Profile fromJson(@NonNull String key, @NonNull JSONObject obj) {
+        Volume volume = new Volume(obj.optString("device"), obj.optString("mountPoint"), obj.optString("fsType"));
+        if (!volume.key().equals(key)) return null;
+        return new Profile(volume, obj.optLong("throughput"), obj.optLong("fsyncLatency"), obj.optLong("measuredAt"), 0);
+    }
+
+    @NonNull
+    private static JSONObject toJson(@NonNull Profile profile) throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("device", profile.volume.device);
+        obj.put("mountPoint", profile.volume.mountPoint);
+        obj.put("fsType", profile.volume.fsType);
+        obj.put("throughput", profile.throughput);
+        obj.put("fsyncLatency", profile.fsyncLatency);
+        obj.put("measuredAt", profile.measuredAt);
+        return obj;
+    }
+
+    @Nullable
+    public synchronized Profile cached(@NonNull File directory) {
+        Profile profile = profiles.get(volumeOf(directory).key());
+        return profile == null ? null : profile.withUsableSpace(directory.getUsableSpace());
+    }
+
+    @Nullable
+    public synchronized Profile cached(@NonNull File directory, @NonNull File stateDir) {
+        load(stateDir);
+        return cached(directory);
+    }
+
+    @Nullable
+    @WorkerThread
+    public Profile profile(@NonNull File directory, @NonNull File stateDir) {
+        Volume volume = volumeOf(directory);
+        synchronized (this) {
+            load(stateDir);
+            Profile profile = profiles.get(volume.key());
+            if (profile != null) return profile.withUsableSpace(directory.getUsableSpace());
+        }
+
+        if (!directory.isDirectory() || !directory.canWrite() || directory.getUsableSpace() < MIN_FREE_SPACE)
+            return null;
+
+        Profile profile;
+        try {
+            profile = measure(directory, volume);
+        } catch (IOException ex) {
+            Logger.w(TAG, "Failed profiling storage at " + directory, ex);
+            return null;
+        }
+
+        Logger.i(TAG, profile.toString());
+        synchronized (this) {
+            profiles.put(volume.key(), profile);
+            save(stateDir);
+        }
+
+        return profile;
+    }
+
+    public void profileInBackground(@NonNull File directory, @NonNull File stateDir) {
+        String key = volumeOf(directory).key();
+        synchronized (this) {
+            if (!measuring.add(key)) return;
+        }
+
+        Scheduler.get().runBlocking("aria2-storageProfiler", () -> {
+            try {
+                profile(directory, stateDir);
+            } finally {
+                synchronized (this) {
+                    measuring.remove(key);
+                }
+            }
+        });
+    }
+
+    public synchronized void invalidate(@NonNull File stateDir) {
+        profiles.clear();
+        save(stateDir);
+    }
+
+    private void load(@NonNull File stateDir) {
+        if (stateDir.equals(loadedFrom)) return;
+        loadedFrom = stateDir;
+        profiles.clear();
+
+        File store = new File(stateDir, STORE_NAME);
+        if (!store.exists()) return;
+
+        StringBuilder builder = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(store), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) builder.append(line);
+
+            JSONObject obj = new JSONObject(builder.toString());
+            Iterator<String> keys = obj.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                Profile profile = fromJson(key, obj.getJSONObject(key));
+                if (profile != null) profiles.put(key, profile);
+            }
+        } catch (IOException | JSONException ex) {
+            Logger.w(TAG, "Failed loading storage profiles.", ex);
+        }
+    }
+
+    private void save(@NonNull File stateDir) {
+        try {
+            JSONObject obj = new JSONObject();
+            for (Map.Entry<String, Profile> entry : profiles.entrySet())
+                obj.put(entry.getKey(), toJson(entry.getValue()));
+
+            try (FileOutputStream out = new FileOutputStream(new File(stateDir, STORE_NAME))) {
+                out.write(obj.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException | JSONException ex) {
+            Logger.w(TAG, "Failed saving storage profiles.", ex);
+        }
+    }
+
+    public static final class Volume {
+        public final String device;
+        public final String mountPoint;
+        public final String fsType;
+
+        Volume(@NonNull String device, @NonNull String mountPoint, @NonNull String fsType) {
+            this.device = device;
+            this.mountPoint = mountPoint;
+            this.fsType = fsType;
+        }
+
+        @NonNull
+        String key() {
+            return device + ' ' + fsType + ' ' + mountPoint;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Volume{device=" + device + ", mountPoint=" + mountPoint + ", fsType=" + fsType + '}';
+        }
+    }
+
+    public static final class Profile {
+        public final Volume volume;
+        public final long throughput;
+        public final long fsyncLatency;
+        public final long measuredAt;
+        public final long usableSpace;
+
+        Profile(@NonNull Volume volume, long throughput, long fsyncLatency, long measuredAt, long usableSpace) {
+            this.volume = volume;
+            this.throughput = throughput;
+            this.fsyncLatency = fsyncLatency;
+            this.measuredAt = measuredAt;
+            this.usableSpace = usableSpace;
+        }
+
+        @NonNull
+        Profile withUsableSpace(long usableSpace) {
+            return new Profile(volume, throughput, fsyncLatency, measuredAt, usableSpace);
+        }
+
+        private boolean slowSync() {
+            return throughput < SLOW_THROUGHPUT || fsyncLatency > SLOW_FSYNC_MICROS;
+        }
+
+        @Nullable
+        public String fileAllocation() {
+            if (SLOW_ALLOCATION_FILESYSTEMS.contains(volume.fsType)) return "none";
+            else if (EXTENT_FILESYSTEMS.contains(volume.fsType)) return "falloc";
+            else return null;
+        }
+
+        @Nullable
+        public String diskCache() {
+            return slowSync() ? "32M" : null;
+        }
+
+        @Nullable
+        public String pieceLength() {
+            return slowSync() || SLOW_ALLOCATION_FILESYSTEMS.contains(volume.fsType) ? "4M" : null;
+        }
+
+        @NonNull
+        public Map<String, String> options() {
+            Map<String, String> options = new HashMap<>();
+            String fileAllocation = fileAllocation();
+            if (fileAllocation != null) options.put("file-allocation", fileAllocation);
+            String diskCache = diskCache();
+            if (diskCache != null) options.put("disk-cache", diskCache);
+            String pieceLength = pieceLength();
+            if (pieceLength != null) options.put("piece-length", pieceLength);
+            return Collections.unmodifiableMap(options);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Profile{volume=" + volume + ", throughput=" + throughput + ", fsyncLatency=" + fsyncLatency + ", usableSpace=" + usableSpace + ", options=" + options() + '}';
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public final class Subscription implements Aria2.MessageListener, Closeable {
+    public static final KeySelector DEFAULT_KEYS = msg -> {
+        switch (msg.type()) {
+            case MONITOR_UPDATE:
+                return "monitor:" + msg.instance();
+            case DOWNLOAD_PROGRESS:
+                Object obj = msg.object();
+                return obj instanceof DownloadProgress ? "progress:" + msg.instance() + ':' + ((DownloadProgress) obj).gid : null;
+            default:
+                return null;
+        }
+    };
+    private static final String TAG = Subscription.class.getSimpleName();
+    private static final long BLOCK_CHECK = TimeUnit.MILLISECONDS.toNanos(100);
+    private final String name;
+    private final int capacity;
+    private final Overflow overflow;
+    private final KeySelector keys;
+    private final Aria2.MessageListener listener;
+    private final Aria2Cluster cluster;
+    private final ArrayDeque<Message> queue = new ArrayDeque<>();
+    private final Map<Object, Message> pending = new HashMap<>();
+    private final Map<Message, Object> pendingKeys = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Metrics.Counter dropped;
+    private final Metrics.Counter conflated;
+    private final Metrics.Summary lag;
+    private final Metrics.Summary blocked;
+    private boolean draining = false;
+    private volatile boolean closed = false;
+
+    Subscription(@NonNull String name, int capacity, @NonNull Overflow overflow, @Nullable KeySelector keys, @NonNull Aria2.MessageListener listener, @NonNull Aria2Cluster cluster) {
+        this.name = name;
+        this.capacity = Math.max(1, capacity);
+        this.overflow = overflow;
+        this.keys = overflow == Overflow.CONFLATE ? (keys == null ? DEFAULT_KEYS : keys) : null;
+        this.listener = listener;
+        this.cluster = cluster;
+
+        Metrics metrics = Metrics.get();
+        String policy = overflow.name().toLowerCase(Locale.ROOT);
+        dropped = metrics.counter("aria2_subscriber_dropped_total", "Events dropped because the subscriber buffer was full.", "subscriber", name, "policy", policy);
+        conflated = metrics.counter("aria2_subscriber_conflated_total", "Events merged into a pending event with the same key.", "subscriber", name);
+        lag = metrics.summary("aria2_subscriber_lag_seconds", "Time between buffering an event and delivering it to the subscriber.", "subscriber", name);
+        blocked = metrics.summary("aria2_subscriber_blocked_seconds", "Time the dispatcher waited for room in the subscriber buffer.", "subscriber", name);
+        metrics.gauge("aria2_subscriber_queue_depth", "Events waiting in the subscriber buffer.", this::size, "subscriber", name);
+        metrics.gauge("aria2_subscriber_oldest_seconds", "Age of the oldest event waiting in the subscriber buffer.", this::oldestAge, "subscriber", name);
+    }
+
+    @NonNull
+    private static Message copy(@NonNull Message msg) {
+        Object obj = msg.object();
+        if (obj instanceof MonitorUpdate) obj = ((MonitorUpdate) obj).snapshot();
+
+        Message copy = Message.obtain(msg.type(), msg.integer(), obj);
+        copy.instance = msg.instance();
+        copy.postedAt = System.nanoTime();
+        return copy;
+    }
+
+    @NonNull
+    public String name() {
+        return name;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double oldestAge() {
+        lock.lock();
+        try {
+            Message head = queue.peekFirst();
+            return head == null ? 0 : (System.nanoTime() - head.postedAt) / 1e9;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onMessage(@NonNull Message msg) {
+        if (closed) return;
+
+        Object key = keys == null ? null : keys.key(msg);
+        Message copy = copy(msg);
+
+        lock.lock();
+        try {
+            if (key != null) {
+                Message existing = pending.get(key);
+                if (existing != null) {
+                    existing.conflate(copy);
+                    conflated.inc();
+                    return;
+                }
+            }
+
+            if (queue.size() >= capacity) {
+                if (overflow == Overflow.BLOCK) {
+                    long start = System.nanoTime();
+                    while (queue.size() >= capacity && !closed) {
+                        try {
+                            notFull.awaitNanos(BLOCK_CHECK);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+
+                    blocked.observeNanos(System.nanoTime() - start);
+                    if (queue.size() >= capacity || closed) {
+                        copy.recycle();
+                        dropped.inc();
+                        return;
+                    }
+                } else {
+                    discard(queue.pollFirst());
+                    dropped.inc();
+                }
+            }
+
+            queue.addLast(copy);
+            if (key != null) {
+                pending.put(key, copy);
+                pendingKeys.put(copy, key);
+            }
+
+            if (!draining) {
+                draining = true;
+                try {
+                    Scheduler.get().runBlocking("aria2-subscription-" + name, this::drain);
+                } catch (RejectedExecutionException ex) {
+                    draining = false;
+                    Logger.e(TAG, "Failed scheduling drain of " + name, ex);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void discard(@NonNull Message msg) {
+        Object key = pendingKeys.remove(msg);
+        if (key != null) pending.remove(key);
+        msg.recycle();
+    }
+
+    @Nullable
+    private Message poll() {
+        lock.lock();
+        try {
+            Message msg = queue.pollFirst();
+            if (msg == null) {
+                draining = false;
+                return null;
+            }
+
+            Object key = pendingKeys.remove(msg);
+            if (key != null) pending.remove(key);
+            notFull.signal();
+            return msg;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        Message msg;
+        while ((msg = poll()) != null) {
+            lag.observeNanos(System.nanoTime() - msg.postedAt);
+
+            try {
+                if (!closed) listener.onMessage(msg);
+            } catch (RuntimeException ex) {
+                Logger.e(TAG, "Subscriber " + name + " failed handling " + msg.type(), ex);
+            } finally {
+                msg.recycle();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        cluster.removeListener(this);
+
+        lock.lock();
+        try {
+            while (!queue.isEmpty()) discard(queue.pollFirst());
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        Metrics metrics = Metrics.get();
+        metrics.remove("aria2_subscriber_dropped_total", "subscriber", name, "policy", overflow.name().toLowerCase(Locale.ROOT));
+        metrics.remove("aria2_subscriber_conflated_total", "subscriber", name);
+        metrics.remove("aria2_subscriber_lag_seconds", "subscriber", name);
+        metrics.remove("aria2_subscriber_blocked_seconds", "subscriber", name);
+        metrics.remove("aria2_subscriber_queue_depth", "subscriber", name);
+        metrics.remove("aria2_subscriber_oldest_seconds", "subscriber", name);
+    }
+
+    public enum Overflow {
+        DROP_OLDEST, CONFLATE, BLOCK
+    }
+
+    public interface KeySelector {
+        @Nullable
+        Object key(@NonNull Message msg);
+    }
+}
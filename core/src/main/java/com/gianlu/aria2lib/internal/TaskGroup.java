@@ -0,0 +1,115 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public final class TaskGroup implements Closeable {
+    private static final String TAG = TaskGroup.class.getSimpleName();
+    private final Scheduler scheduler;
+    private final String name;
+    private final Set<Thread> threads = new HashSet<>();
+    private final List<ScheduledFuture<?>> periodic = new ArrayList<>();
+    private final List<Closeable> resources = new ArrayList<>();
+    private int active = 0;
+    private boolean closed = false;
+
+    TaskGroup(@NonNull Scheduler scheduler, @NonNull String name) {
+        this.scheduler = scheduler;
+        this.name = name;
+    }
+
+    private static void closeQuietly(@NonNull Closeable resource) {
+        try {
+            resource.close();
+        } catch (IOException | RuntimeException ex) {
+            Logger.w(TAG, "Failed closing resource.", ex);
+        }
+    }
+
+    public synchronized void fork(@NonNull String task, @NonNull Runnable runnable) {
+        if (closed) throw new IllegalStateException(name + " is closed!");
+
+        active++;
+        try {
+            scheduler.runDedicated(name + "-" + task, () -> run(runnable));
+        } catch (RejectedExecutionException ex) {
+            active--;
+            throw ex;
+        }
+    }
+
+    private void run(@NonNull Runnable runnable) {
+        Thread thread = Thread.currentThread();
+        synchronized (this) {
+            threads.add(thread);
+            if (closed) thread.interrupt();
+        }
+
+        try {
+            runnable.run();
+        } finally {
+            synchronized (this) {
+                threads.remove(thread);
+                active--;
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized void forkPeriodic(@NonNull Runnable runnable, long initialDelay, long delay, @NonNull TimeUnit unit) {
+        if (closed) throw new IllegalStateException(name + " is closed!");
+        periodic.add(scheduler.scheduleWithFixedDelay(runnable, initialDelay, delay, unit));
+    }
+
+    public synchronized void own(@NonNull Closeable resource) {
+        if (closed) closeQuietly(resource);
+        else resources.add(resource);
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        List<Closeable> resources;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            resources = new ArrayList<>(this.resources);
+            for (ScheduledFuture<?> future : periodic) future.cancel(false);
+        }
+
+        for (int i = resources.size() - 1; i >= 0; i--)
+            closeQuietly(resources.get(i));
+
+        synchronized (this) {
+            for (Thread thread : threads) thread.interrupt();
+        }
+    }
+
+    public synchronized boolean awaitTermination(long timeout, @NonNull TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            while (active > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+public final class Termination implements Serializable {
+    private static final String[] DESCRIPTIONS = {
+            "All downloads were successful",
+            "An unknown error occurred",
+            "Time out occurred",
+            "A resource was not found",
+            "Too many \"resource not found\" errors",
+            "Download speed was too slow",
+            "Network problem occurred",
+            "There were unfinished downloads",
+            "Remote server did not support resume",
+            "Not enough disk space available",
+            "Piece length was different from the control file",
+            "Already downloading the same file",
+            "Already downloading the same info hash torrent",
+            "File already existed",
+            "Renaming file failed",
+            "Could not open existing file",
+            "Could not create new file or truncate existing file",
+            "File I/O error occurred",
+            "Could not create directory",
+            "Name resolution failed",
+            "Could not parse Metalink document",
+            "FTP command failed",
+            "HTTP response header was bad or unexpected",
+            "Too many redirects occurred",
+            "HTTP authorization failed",
+            "Could not parse bencoded file",
+            "Torrent file was corrupted or missing information",
+            "Magnet URI was bad",
+            "Bad or unrecognized option was given",
+            "Remote server was unable to handle the request",
+            "Could not parse JSON-RPC request",
+            "Reserved",
+            "Checksum validation failed"
+    };
+    private static final Category[] CATEGORIES = {
+            Category.CLEAN, Category.UNKNOWN, Category.NETWORK, Category.NETWORK, Category.NETWORK,
+            Category.NETWORK, Category.NETWORK, Category.STOPPED, Category.NETWORK, Category.DISK_FULL,
+            Category.INTEGRITY, Category.BAD_INPUT, Category.BAD_INPUT, Category.FILE_IO, Category.FILE_IO,
+            Category.FILE_IO, Category.FILE_IO, Category.FILE_IO, Category.FILE_IO, Category.NETWORK,
+            Category.BAD_INPUT, Category.NETWORK, Category.NETWORK, Category.NETWORK, Category.NETWORK,
+            Category.BAD_INPUT, Category.BAD_INPUT, Category.BAD_INPUT, Category.OPTION_ERROR, Category.NETWORK,
+            Category.BAD_INPUT, Category.UNKNOWN, Category.INTEGRITY
+    };
+    private static final int SIGNAL_BASE = 128;
+    private static final int SIGINT = 2;
+    private static final int SIGKILL = 9;
+    private static final int SIGTERM = 15;
+    public final int exitCode;
+    public final Category category;
+    public final String description;
+    public final boolean stopRequested;
+    public final long runtime;
+    public final List<String> tail;
+    public final int lastCpu;
+    public final long lastRss;
+    public final long lastMonitorAge;
+
+    Termination(int exitCode, boolean stopRequested, long runtime, @NonNull List<String> tail, int lastCpu, long lastRss, long lastMonitorAge) {
+        this.exitCode = exitCode;
+        this.category = categoryOf(exitCode);
+        this.description = describe(exitCode);
+        this.stopRequested = stopRequested;
+        this.runtime = runtime;
+        this.tail = Collections.unmodifiableList(tail);
+        this.lastCpu = lastCpu;
+        this.lastRss = lastRss;
+        this.lastMonitorAge = lastMonitorAge;
+    }
+
+    @NonNull
+    public static Category categoryOf(int exitCode) {
+        if (exitCode >= 0 && exitCode < CATEGORIES.length) return CATEGORIES[exitCode];
+
+        switch (exitCode - SIGNAL_BASE) {
+            case SIGINT:
+            case SIGTERM:
+                return Category.STOPPED;
+            case SIGKILL:
+                return Category.KILLED;
+            default:
+                return exitCode > SIGNAL_BASE && exitCode < SIGNAL_BASE + 64 ? Category.CRASHED : Category.UNKNOWN;
+        }
+    }
+
+    @NonNull
+    public static String describe(int exitCode) {
+        if (exitCode >= 0 && exitCode < DESCRIPTIONS.length) return DESCRIPTIONS[exitCode];
+        else if (exitCode > SIGNAL_BASE && exitCode < SIGNAL_BASE + 64) return "Killed by signal " + (exitCode - SIGNAL_BASE);
+        else return "Unknown exit code " + exitCode;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Termination{exitCode=").append(exitCode)
+                .append(", category=").append(category)
+                .append(", description=").append(description)
+                .append(", stopRequested=").append(stopRequested)
+                .append(", runtime=").append(runtime)
+                .append(", lastCpu=").append(lastCpu)
+                .append(", lastRss=").append(lastRss)
+                .append(", lastMonitorAge=").append(lastMonitorAge)
+                .append('}');
+
+        for (String line : tail) builder.append("\n\t").append(line);
+        return builder.toString();
+    }
+
+    public enum Category {
+        CLEAN, STOPPED, NETWORK, DISK_FULL, FILE_IO, INTEGRITY, BAD_INPUT, OPTION_ERROR, KILLED, CRASHED, UNKNOWN
+    }
+}
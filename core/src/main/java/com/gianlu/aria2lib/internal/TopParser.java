@@ -0,0 +1,114 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+abstract class TopParser {
+    static final Pattern TOP_OLD_PATTERN = Pattern.compile("(\\d*?)\\s+(\\d*?)\\s+(\\d*?)%\\s(.)\\s+(\\d*?)\\s+(\\d*?)K\\s+(\\d*?)K\\s+(..)\\s(.*?)\\s+(.*)$");
+    static final Pattern TOP_NEW_PATTERN = Pattern.compile("(\\d+)\\s+(\\d+\\.\\d+)\\s+([\\d|.]+?.)\\s+(.*)$");
+    static final TopParser OLD_PARSER = new TopParser(TOP_OLD_PATTERN, 1, 3, 7) {
+        @Override
+        boolean matches(@NonNull String line) {
+            return line.endsWith("aria2c.so");
+        }
+
+        @NonNull
+        @Override
+        String getCommand(int delaySec) {
+            return "top -d " + delaySec;
+        }
+
+        @Override
+        long getMemoryBytes(@NonNull String match) {
+            return Long.parseLong(match) * 1024;
+        }
+    };
+    static final TopParser NEW_PARSER = new TopParser(TOP_NEW_PATTERN, 1, 2, 3) {
+        @Override
+        long getMemoryBytes(@NonNull String match) {
+            int shift;
+            int digits = match.length() - 1;
+            switch (match.charAt(digits)) {
+                case 'K':
+                    shift = 10;
+                    break;
+                case 'M':
+                    shift = 20;
+                    break;
+                case 'G':
+                    shift = 30;
+                    break;
+                case 'T':
+                    shift = 40;
+                    break;
+                default:
+                    shift = 0;
+                    digits++;
+                    break;
+            }
+
+            return parseFixed(match, digits, 1L << shift);
+        }
+
+        @Override
+        boolean matches(@NonNull String line) {
+            return line.contains("aria2c");
+        }
+
+        @NonNull
+        @Override
+        String getCommand(int delaySec) {
+            return String.format(Locale.ROOT, "top -d %d -q -b -o PID,%%CPU,RES,CMDLINE", delaySec);
+        }
+    };
+    private final Pattern pattern;
+    private final int[] pidCpuRss;
+
+    TopParser(@NonNull Pattern pattern, int... pidCpuRss) {
+        this.pattern = pattern;
+        this.pidCpuRss = pidCpuRss;
+        if (pidCpuRss.length != 3) throw new IllegalArgumentException();
+    }
+
+    @Nullable
+    final MonitorUpdate parseLine(@NonNull String line) {
+        Matcher matcher = pattern.matcher(line);
+        if (!matcher.find()) return null;
+
+        String cpu = matcher.group(pidCpuRss[1]);
+        return MonitorUpdate.obtain(Integer.parseInt(matcher.group(pidCpuRss[0])), (int) parseFixed(cpu, cpu.length(), MonitorUpdate.CPU_SCALE), getMemoryBytes(matcher.group(pidCpuRss[2])));
+    }
+
+    static long parseFixed(@NonNull String str, int end, long scale) {
+        long integer = 0;
+        long fraction = 0;
+        long divisor = 1;
+        boolean decimal = false;
+        for (int i = 0; i < end; i++) {
+            char c = str.charAt(i);
+            if (c == '.' && !decimal) {
+                decimal = true;
+            } else if (c < '0' || c > '9') {
+                throw new NumberFormatException(str);
+            } else if (decimal) {
+                fraction = fraction * 10 + (c - '0');
+                divisor *= 10;
+            } else {
+                integer = integer * 10 + (c - '0');
+            }
+        }
+
+        return integer * scale + fraction * scale / divisor;
+    }
+
+    abstract long getMemoryBytes(@NonNull String match);
+
+    abstract boolean matches(@NonNull String line);
+
+    @NonNull
+    abstract String getCommand(int delaySec);
+}
@@ -17,4 +17,16 @@ public abstract class Aria2PK extends CommonPK {
     public static final Prefs.Key CUSTOM_OPTIONS = new Prefs.Key("customOptions");
     public static final Prefs.KeyWithDefault<Boolean> SAVE_SESSION = new Prefs.KeyWithDefault<>("saveSession", true);
     public static final Prefs.Key BARE_CONFIG_PROVIDER = new Prefs.Key("bareConfigProvider");
+    public static final Prefs.KeyWithDefault<Integer> INSTANCES = new Prefs.KeyWithDefault<>("instances", 1);
+    public static final Prefs.KeyWithDefault<String> INSTANCE_DIRECTORIES = new Prefs.KeyWithDefault<>("instanceDirectories", "");
+    public static final Prefs.KeyWithDefault<Boolean> AUTO_TUNING = new Prefs.KeyWithDefault<>("autoTuning", false);
+    public static final Prefs.Key AUTO_TUNING_BEST = new Prefs.Key("autoTuningBest");
+    public static final Prefs.KeyWithDefault<Boolean> MEMORY_GOVERNOR = new Prefs.KeyWithDefault<>("memoryGovernor", true);
+    public static final Prefs.KeyWithDefault<String> LOG_LEVEL = new Prefs.KeyWithDefault<>("logLevel", "notice");
+    public static final Prefs.KeyWithDefault<Integer> SUMMARY_INTERVAL = new Prefs.KeyWithDefault<>("summaryInterval", 60);
+    public static final Prefs.KeyWithDefault<Boolean> STORAGE_TUNING = new Prefs.KeyWithDefault<>("storageTuning", true);
+    public static final Prefs.KeyWithDefault<Integer> SPACE_LOW_WATERMARK = new Prefs.KeyWithDefault<>("spaceLowWatermarkMb", 256);
+    public static final Prefs.KeyWithDefault<Integer> SPACE_HIGH_WATERMARK = new Prefs.KeyWithDefault<>("spaceHighWatermarkMb", 512);
+    public static final Prefs.KeyWithDefault<Boolean> BROADCAST_MESSAGES = new Prefs.KeyWithDefault<>("broadcastMessages", false);
+    public static final Prefs.KeyWithDefault<Integer> METRICS_PORT = new Prefs.KeyWithDefault<>("metricsPort", 0);
 }
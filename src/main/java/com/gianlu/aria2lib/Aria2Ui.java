@@ -14,11 +14,22 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
+import com.gianlu.aria2lib.internal.AndroidPlatform;
 import com.gianlu.aria2lib.internal.Aria2;
+import com.gianlu.aria2lib.internal.Aria2Cluster;
 import com.gianlu.aria2lib.internal.Aria2Service;
+import com.gianlu.aria2lib.internal.BinaryMetadata;
 import com.gianlu.aria2lib.internal.Message;
+import com.gianlu.aria2lib.internal.MonitorUpdate;
+import com.gianlu.aria2lib.internal.Platform;
+import com.gianlu.aria2lib.internal.ServiceEvent;
+import com.gianlu.aria2lib.internal.ServiceState;
 import com.gianlu.commonutils.misc.SuperTextView;
 import com.gianlu.commonutils.preferences.Prefs;
 
@@ -32,28 +43,72 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 public class Aria2Ui {
     public static final int MAX_LOG_LINES = 100;
     private static final String TAG = Aria2Ui.class.getSimpleName();
-    private final Aria2 aria2;
+    private final Aria2Cluster cluster;
     private final Context context;
     private final Listener listener;
     private final LocalBroadcastManager broadcastManager;
     private final List<LogMessage> messages = new ArrayList<>(MAX_LOG_LINES);
     private final ServiceBroadcastReceiver receiver;
+    private final boolean broadcastMessages;
+    private final Aria2Service.Subscriber subscriber = new Aria2Service.Subscriber() {
+        @Override
+        public void onSnapshot(@NonNull ServiceState.Snapshot snapshot) {
+            if (snapshot.truncated) messages.clear();
+            publishEvents(snapshot.events);
+            lastSeq = snapshot.seq;
+
+            for (Map.Entry<Integer, MonitorUpdate> entry : snapshot.monitors.entrySet())
+                if (listener != null) listener.onMessage(new LogMessage(Message.Type.MONITOR_UPDATE, entry.getKey(), 0, entry.getValue()));
+
+            if (listener != null) listener.updateUi(snapshot.running);
+        }
+
+        @Override
+        public void onEvents(@NonNull List<ServiceEvent> events) {
+            publishEvents(events);
+        }
+    };
+    private final LifecycleEventObserver lifecycleObserver = (source, event) -> {
+        if (event == Lifecycle.Event.ON_START) {
+            bind();
+        } else if (event == Lifecycle.Event.ON_STOP) {
+            unbind();
+        } else if (event == Lifecycle.Event.ON_DESTROY) {
+            unbind();
+            source.getLifecycle().removeObserver(this.lifecycleObserver);
+        }
+    };
     private Messenger messenger;
+    private Aria2Service.LocalBinder binder;
+    private boolean bound = false;
+    private long lastSeq = 0;
     private final ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
-            messenger = new Messenger(service);
+            if (service instanceof Aria2Service.LocalBinder) {
+                binder = (Aria2Service.LocalBinder) service;
+                messenger = binder.messenger();
+                if (!broadcastMessages) {
+                    binder.subscribe(subscriber, lastSeq);
+                    return;
+                }
+            } else {
+                messenger = new Messenger(service);
+            }
 
             askForStatus();
         }
 
         @Override
         public void onServiceDisconnected(ComponentName name) {
+            if (binder != null) binder.unsubscribe(subscriber);
+            binder = null;
             messenger = null;
         }
     };
@@ -61,13 +116,11 @@ public class Aria2Ui {
     public Aria2Ui(@NonNull Context context, @Nullable Listener listener) {
         this.context = context;
         this.listener = listener;
-        this.aria2 = Aria2.get();
+        AndroidPlatform.install(context);
+        this.cluster = Aria2Cluster.get();
         this.broadcastManager = LocalBroadcastManager.getInstance(context);
-
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(Aria2Service.BROADCAST_MESSAGE);
-        filter.addAction(Aria2Service.BROADCAST_STATUS);
-        broadcastManager.registerReceiver(receiver = new ServiceBroadcastReceiver(), filter);
+        this.broadcastMessages = Platform.config().broadcastMessages();
+        this.receiver = new ServiceBroadcastReceiver();
     }
 
     public static void provider(@NonNull Class<? extends BareConfigProvider> providerClass) {
@@ -106,19 +159,33 @@ public class Aria2Ui {
         }
     }
 
+    @UiThread
+    public void bind(@NonNull LifecycleOwner owner) {
+        owner.getLifecycle().addObserver(lifecycleObserver);
+    }
+
+    @UiThread
     public void bind() {
-        if (messenger != null) return;
+        if (bound) return;
+        bound = true;
 
-        context.bindService(new Intent(context, Aria2Service.class), serviceConnection, Context.BIND_AUTO_CREATE);
-    }
+        IntentFilter filter = new IntentFilter();
+        if (broadcastMessages) filter.addAction(Aria2Service.BROADCAST_MESSAGE);
+        filter.addAction(Aria2Service.BROADCAST_STATUS);
+        broadcastManager.registerReceiver(receiver, filter);
 
-    @Override
-    protected void finalize() {
-        if (receiver != null) broadcastManager.unregisterReceiver(receiver);
+        context.bindService(new Intent(context, Aria2Service.class), serviceConnection, Context.BIND_AUTO_CREATE);
     }
 
+    @UiThread
     public void unbind() {
-        if (messenger == null) return;
+        if (!bound) return;
+        bound = false;
+
+        broadcastManager.unregisterReceiver(receiver);
+        if (binder != null) binder.unsubscribe(subscriber);
+        binder = null;
+        messenger = null;
 
         try {
             context.unbindService(serviceConnection);
@@ -137,12 +204,24 @@ public class Aria2Ui {
 
     public void loadEnv(@NonNull Context context) throws BadEnvironmentException {
         File parent = context.getFilesDir();
-        aria2.loadEnv(parent, new File(context.getApplicationInfo().nativeLibraryDir, "libaria2c.so"), new File(parent, "session"));
+        cluster.loadEnv(parent, new File(context.getApplicationInfo().nativeLibraryDir, "libaria2c.so"));
     }
 
     @NonNull
+    @WorkerThread
     public String version() throws IOException, BadEnvironmentException {
-        return aria2.version();
+        return Aria2.get().version();
+    }
+
+    @Nullable
+    public String cachedVersion() {
+        BinaryMetadata metadata = metadata();
+        return metadata == null ? null : metadata.versionLine;
+    }
+
+    @Nullable
+    public BinaryMetadata metadata() {
+        return Aria2.get().metadata();
     }
 
     public void startService() {
@@ -152,7 +231,7 @@ public class Aria2Ui {
             Aria2Service.startService(context);
         } catch (SecurityException ex) {
             if (listener != null) {
-                publishMessage(new LogMessage(Message.Type.PROCESS_ERROR, 0, ex.getMessage()));
+                publishMessage(new LogMessage(Message.Type.PROCESS_ERROR, 0, 0, ex.getMessage()));
                 listener.updateUi(false);
             }
 
@@ -165,7 +244,7 @@ public class Aria2Ui {
             Aria2Service.startService(context);
         } catch (SecurityException ex) {
             if (listener != null) {
-                publishMessage(new LogMessage(Message.Type.PROCESS_ERROR, 0, ex.getMessage()));
+                publishMessage(new LogMessage(Message.Type.PROCESS_ERROR, 0, 0, ex.getMessage()));
                 listener.updateUi(false);
             }
 
@@ -187,11 +266,11 @@ public class Aria2Ui {
     }
 
     public boolean delete() {
-        return aria2.delete();
+        return cluster.delete();
     }
 
     public boolean hasEnv() {
-        return aria2.hasEnv();
+        return cluster.hasEnv();
     }
 
     @UiThread
@@ -199,17 +278,37 @@ public class Aria2Ui {
         listener.onUpdateLogs(Collections.unmodifiableList(messages));
     }
 
-    private void publishMessage(@NonNull LogMessage msg) {
-        if (msg.type != Message.Type.MONITOR_UPDATE) {
+    private void keepMessage(@NonNull LogMessage msg) {
+        if (msg.type != Message.Type.MONITOR_UPDATE && msg.type != Message.Type.DOWNLOAD_PROGRESS) {
             if (messages.size() >= MAX_LOG_LINES)
                 messages.remove(0);
 
             messages.add(msg);
         }
+    }
 
+    private void publishMessage(@NonNull LogMessage msg) {
+        keepMessage(msg);
         if (listener != null) listener.onMessage(msg);
     }
 
+    @UiThread
+    private void publishEvents(@NonNull List<ServiceEvent> events) {
+        List<LogMessage> batch = new ArrayList<>(events.size());
+        for (ServiceEvent event : events) {
+            lastSeq = Math.max(lastSeq, event.seq);
+            LogMessage msg = new LogMessage(event.type, event.instance, event.i, event.o instanceof Serializable ? (Serializable) event.o : null);
+            keepMessage(msg);
+            batch.add(msg);
+        }
+
+        if (listener instanceof BatchListener) {
+            ((BatchListener) listener).onMessages(Collections.unmodifiableList(batch));
+        } else if (listener != null) {
+            for (LogMessage msg : batch) listener.onMessage(msg);
+        }
+    }
+
     @UiThread
     public interface Listener {
         void onUpdateLogs(@NonNull List<LogMessage> msg);
@@ -219,16 +318,28 @@ public class Aria2Ui {
         void updateUi(boolean on);
     }
 
+    @UiThread
+    public interface BatchListener extends Listener {
+        void onMessages(@NonNull List<LogMessage> msg);
+    }
+
     public static class LogMessage {
         public final Message.Type type;
+        public final int instance;
         public final int i;
         public final Serializable o;
 
-        private LogMessage(@NonNull Message.Type type, int i, @Nullable Serializable o) {
+        private LogMessage(@NonNull Message.Type type, int instance, int i, @Nullable Serializable o) {
             this.type = type;
+            this.instance = instance;
             this.i = i;
             this.o = o;
         }
+
+        @Nullable
+        public <T> T object(@NonNull Class<T> clazz) {
+            return clazz.isInstance(o) ? clazz.cast(o) : null;
+        }
     }
 
     private class ServiceBroadcastReceiver extends BroadcastReceiver {
@@ -239,9 +350,10 @@ public class Aria2Ui {
                 Message.Type type = (Message.Type) intent.getSerializableExtra("type");
                 if (type == null) return;
 
+                int instance = intent.getIntExtra("instance", 0);
                 int i = intent.getIntExtra("i", 0);
                 Serializable o = intent.getSerializableExtra("o");
-                publishMessage(new LogMessage(type, i, o));
+                publishMessage(new LogMessage(type, instance, i, o));
             } else if (Objects.equals(intent.getAction(), Aria2Service.BROADCAST_STATUS)) {
                 if (listener != null) listener.updateUi(intent.getBooleanExtra("on", false));
             }
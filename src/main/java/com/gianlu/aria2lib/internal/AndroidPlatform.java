@@ -0,0 +1,201 @@
+package com.gianlu.aria2lib.internal;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gianlu.aria2lib.Aria2PK;
+import com.gianlu.commonutils.preferences.Prefs;
+import com.gianlu.commonutils.preferences.json.JsonStoring;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public final class AndroidPlatform implements LogProvider, ConfigProvider, CertificateProvider {
+    private static final String TAG = AndroidPlatform.class.getSimpleName();
+    private static AndroidPlatform instance;
+    private final SharedPreferences.OnSharedPreferenceChangeListener refreshListener = (prefs, key) -> Platform.refreshConfig();
+
+    private AndroidPlatform() {
+    }
+
+    public static synchronized void install(@NonNull Context context) {
+        if (instance != null) return;
+
+        instance = new AndroidPlatform();
+        Platform.install(instance, instance, instance);
+        PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext()).registerOnSharedPreferenceChangeListener(instance.refreshListener);
+    }
+
+    @Override
+    public void log(int priority, @NonNull String tag, @NonNull String msg, @Nullable Throwable tr) {
+        if (tr == null) Log.println(priority, tag, msg);
+        else Log.println(priority, tag, msg + '\n' + Log.getStackTraceString(tr));
+    }
+
+    @Override
+    public int rpcPort() {
+        return Prefs.getInt(Aria2PK.RPC_PORT, 6800);
+    }
+
+    @Nullable
+    @Override
+    public String rpcToken() {
+        return Prefs.getString(Aria2PK.RPC_TOKEN);
+    }
+
+    @Override
+    public boolean rpcListenAll() {
+        return Prefs.getBoolean(Aria2PK.RPC_LISTEN_ALL);
+    }
+
+    @Override
+    public boolean rpcAllowOriginAll() {
+        return Prefs.getBoolean(Aria2PK.RPC_ALLOW_ORIGIN_ALL);
+    }
+
+    @Override
+    public boolean checkCertificate() {
+        return Prefs.getBoolean(Aria2PK.CHECK_CERTIFICATE);
+    }
+
+    @Override
+    public boolean saveSession() {
+        return Prefs.getBoolean(Aria2PK.SAVE_SESSION);
+    }
+
+    @Override
+    public boolean showPerformance() {
+        return Prefs.getBoolean(Aria2PK.SHOW_PERFORMANCE);
+    }
+
+    @Override
+    public int monitorDelay() {
+        return Prefs.getInt(Aria2PK.NOTIFICATION_UPDATE_DELAY, 1);
+    }
+
+    @NonNull
+    @Override
+    public String logLevel() {
+        return Prefs.getString(Aria2PK.LOG_LEVEL);
+    }
+
+    @Override
+    public int summaryInterval() {
+        return Prefs.getInt(Aria2PK.SUMMARY_INTERVAL, 60);
+    }
+
+    @Override
+    public boolean storageTuning() {
+        return Prefs.getBoolean(Aria2PK.STORAGE_TUNING);
+    }
+
+    @Override
+    public long spaceLowWatermark() {
+        return Prefs.getInt(Aria2PK.SPACE_LOW_WATERMARK, 256) * 1024L * 1024;
+    }
+
+    @Override
+    public long spaceHighWatermark() {
+        return Prefs.getInt(Aria2PK.SPACE_HIGH_WATERMARK, 512) * 1024L * 1024;
+    }
+
+    @NonNull
+    @Override
+    public String outputDirectory() {
+        return Prefs.getString(Aria2PK.OUTPUT_DIRECTORY);
+    }
+
+    @NonNull
+    @Override
+    public Map<String, String> customOptions() {
+        Map<String, String> options = new HashMap<>();
+        try {
+            JSONObject obj = JsonStoring.intoPrefs().getJsonObject(Aria2PK.CUSTOM_OPTIONS);
+            if (obj == null) return options;
+
+            Iterator<String> iterator = obj.keys();
+            while (iterator.hasNext()) {
+                String key = iterator.next();
+                options.put(key, obj.getString(key));
+            }
+        } catch (JSONException ex) {
+            Log.e(TAG, "Failed loading custom options.", ex);
+        }
+
+        return options;
+    }
+
+    @Override
+    public int instances() {
+        return Prefs.getInt(Aria2PK.INSTANCES, 1);
+    }
+
+    @NonNull
+    @Override
+    public List<File> instanceDirectories() {
+        List<File> dirs = new ArrayList<>();
+        String str = Prefs.getString(Aria2PK.INSTANCE_DIRECTORIES, "");
+        if (str == null || str.isEmpty()) return dirs;
+
+        for (String path : str.split(File.pathSeparator)) {
+            path = path.trim();
+            if (!path.isEmpty()) dirs.add(new File(path));
+        }
+
+        return dirs;
+    }
+
+    @Override
+    public int metricsPort() {
+        return Prefs.getInt(Aria2PK.METRICS_PORT, 0);
+    }
+
+    @Override
+    public boolean autoTuning() {
+        return Prefs.getBoolean(Aria2PK.AUTO_TUNING);
+    }
+
+    @Override
+    public boolean memoryGovernor() {
+        return Prefs.getBoolean(Aria2PK.MEMORY_GOVERNOR);
+    }
+
+    @Override
+    public boolean broadcastMessages() {
+        return Prefs.getBoolean(Aria2PK.BROADCAST_MESSAGES);
+    }
+
+    @NonNull
+    @Override
+    public List<Certificate> certificates() throws GeneralSecurityException, IOException {
+        List<Certificate> list = new ArrayList<>();
+        KeyStore ks = KeyStore.getInstance("AndroidCAStore");
+        if (ks == null) return list;
+
+        ks.load(null, null);
+        Enumeration<String> aliases = ks.aliases();
+        while (aliases.hasMoreElements()) {
+            Certificate cert = ks.getCertificate(aliases.nextElement());
+            if (cert != null) list.add(cert);
+        }
+
+        return list;
+    }
+}
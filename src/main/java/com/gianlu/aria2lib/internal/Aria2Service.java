@@ -8,7 +8,7 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -17,12 +17,12 @@ import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
-import android.preference.PreferenceManager;
 import android.util.Log;
 import android.widget.RemoteViews;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
@@ -37,6 +37,11 @@ import com.gianlu.commonutils.preferences.Prefs;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 
 public final class Aria2Service extends Service implements Aria2.MessageListener {
@@ -52,15 +57,20 @@ public final class Aria2Service extends Service implements Aria2.MessageListener
     private static final int NOTIFICATION_ID = 69;
     private static final String TAG = Aria2Service.class.getSimpleName();
     private final HandlerThread serviceThread = new HandlerThread("aria2-service");
+    private final FrameDispatcher frameDispatcher = new FrameDispatcher();
     private Messenger messenger;
+    private LocalBinder binder;
     private LocalBroadcastManager broadcastManager;
-    private Aria2 aria2;
+    private Aria2Cluster cluster;
+    private final List<AutoTuner> tuners = new ArrayList<>();
+    private MemoryGovernor governor;
+    private MetricsServer metricsServer;
     private NotificationCompat.Builder defaultNotification;
     private NotificationManager notificationManager;
-    private long startTime = System.currentTimeMillis();
+    private volatile long startTime = System.currentTimeMillis();
     private BareConfigProvider provider;
-    private final SharedPreferences.OnSharedPreferenceChangeListener reinitializeNotificationListener = (sharedPreferences, key) -> {
-        if (key.equals(Aria2PK.SHOW_PERFORMANCE.key()))
+    private final RuntimeConfig.Listener reinitializeNotificationListener = (previous, current) -> {
+        if (previous.showPerformance() != current.showPerformance())
             initializeNotification();
     };
 
@@ -109,7 +119,7 @@ public final class Aria2Service extends Service implements Aria2.MessageListener
                         .putExtra("openFromNotification", true), PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE))
                 .setContentText("aria2c is running...");
 
-        if (!Prefs.getBoolean(Aria2PK.SHOW_PERFORMANCE))
+        if (!Platform.config().showPerformance())
             defaultNotification.addAction(R.drawable.baseline_clear_24, getString(R.string.stopService), getStopServiceIntent());
     }
 
@@ -119,8 +129,9 @@ public final class Aria2Service extends Service implements Aria2.MessageListener
 
         Prefs.init(this);
 
-        aria2 = Aria2.get();
-        aria2.addListener(this);
+        AndroidPlatform.install(this);
+        cluster = Aria2Cluster.get();
+        cluster.addListener(this);
         serviceThread.start();
         broadcastManager = LocalBroadcastManager.getInstance(this);
         notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
@@ -128,28 +139,40 @@ public final class Aria2Service extends Service implements Aria2.MessageListener
 
         initializeNotification();
 
-        PreferenceManager.getDefaultSharedPreferences(this).registerOnSharedPreferenceChangeListener(reinitializeNotificationListener);
+        Platform.addConfigListener(reinitializeNotificationListener);
 
-        try {
-            Log.d(TAG, aria2.version());
-        } catch (BadEnvironmentException | IOException ex) {
-            Log.e(TAG, "Failed getting aria2 version.", ex);
-        }
+        BinaryMetadata metadata = Aria2.get().metadata();
+        if (metadata != null) Log.d(TAG, metadata.versionLine);
     }
 
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
         if (messenger == null) messenger = new Messenger(new LocalHandler(this));
-        return messenger.getBinder();
+        if (binder == null) binder = new LocalBinder(this);
+        return binder;
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (aria2 != null) aria2.removeListener(this);
+        if (cluster != null) cluster.removeListener(this);
 
-        PreferenceManager.getDefaultSharedPreferences(this).unregisterOnSharedPreferenceChangeListener(reinitializeNotificationListener);
+        Platform.removeConfigListener(reinitializeNotificationListener);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MemoryGovernor governor = this.governor;
+        if (governor != null) governor.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        MemoryGovernor governor = this.governor;
+        if (governor != null) governor.onLowMemory();
     }
 
     @TargetApi(Build.VERSION_CODES.O)
@@ -191,7 +214,18 @@ public final class Aria2Service extends Service implements Aria2.MessageListener
 
     private void stop() {
         try {
-            aria2.stop();
+            stopTuners();
+            if (governor != null) {
+                governor.close();
+                governor = null;
+            }
+
+            if (metricsServer != null) {
+                metricsServer.close();
+                metricsServer = null;
+            }
+
+            cluster.stop();
             stopForeground(true);
             dispatchStatus();
         } catch (RuntimeException ignored) {
@@ -202,48 +236,106 @@ public final class Aria2Service extends Service implements Aria2.MessageListener
         AnalyticsApplication.setCrashlyticsLong("aria2service_startedAt", System.currentTimeMillis());
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) createChannel();
-        startForeground(NOTIFICATION_ID, defaultNotification.build());
-        if (aria2.start()) startTime = System.currentTimeMillis();
+        synchronized (defaultNotification) {
+            startForeground(NOTIFICATION_ID, defaultNotification.build());
+        }
+
+        RuntimeConfig config = Platform.config();
+        if (cluster.start()) startTime = System.currentTimeMillis();
+        if (config.memoryGovernor() && governor == null)
+            governor = new MemoryGovernor(this, cluster);
+        if (config.autoTuning()) startTuners();
+
+        int metricsPort = config.metricsPort();
+        if (metricsPort > 0 && metricsServer == null) {
+            try {
+                metricsServer = new MetricsServer(metricsPort);
+                metricsServer.start();
+            } catch (IOException ex) {
+                Log.e(TAG, "Failed starting metrics server.", ex);
+            }
+        }
 
         dispatchStatus();
 
         AnalyticsApplication.setCrashlyticsLong("aria2service_startedAt_return", System.currentTimeMillis());
     }
 
+    private void startTuners() {
+        synchronized (tuners) {
+            if (!tuners.isEmpty()) return;
+
+            for (Aria2 aria2 : cluster.instances()) {
+                AutoTuner tuner = new AutoTuner(this, aria2, governor);
+                tuners.add(tuner);
+                tuner.start();
+            }
+        }
+    }
+
+    private void stopTuners() {
+        synchronized (tuners) {
+            for (AutoTuner tuner : tuners) tuner.stop();
+            tuners.clear();
+        }
+    }
+
     @Override
     public void onMessage(@NonNull com.gianlu.aria2lib.internal.Message msg) {
         dispatch(msg);
 
+        synchronized (tuners) {
+            for (AutoTuner tuner : tuners) tuner.onMessage(msg);
+        }
+
+        MemoryGovernor governor = this.governor;
+        if (governor != null) governor.onMessage(msg);
+
         if (msg.type() == com.gianlu.aria2lib.internal.Message.Type.MONITOR_UPDATE)
             updateMonitor((MonitorUpdate) msg.object());
     }
 
     private void updateMonitor(@Nullable MonitorUpdate update) {
-        if (update == null || notificationManager == null || !aria2.isRunning()) {
-            if (update != null) update.recycle();
-            return;
-        }
+        if (update == null || notificationManager == null || !cluster.isRunning()) return;
 
         RemoteViews layout = new RemoteViews(getPackageName(), R.layout.aria2lib_custom_notification);
         layout.setTextViewText(R.id.customNotification_runningTime, "Running time: " + CommonUtils.timeFormatter((System.currentTimeMillis() - startTime) / 1000));
-        layout.setTextViewText(R.id.customNotification_pid, "PID: " + update.pid());
-        layout.setTextViewText(R.id.customNotification_cpu, "CPU: " + update.cpu() + "%");
-        layout.setTextViewText(R.id.customNotification_memory, "Memory: " + CommonUtils.dimensionFormatter(update.rss(), false));
+        if (cluster.size() > 1) {
+            Aria2Cluster.Status status = cluster.status();
+            layout.setTextViewText(R.id.customNotification_pid, "Instances: " + status.running + "/" + status.instances.size());
+            layout.setTextViewText(R.id.customNotification_cpu, String.format(Locale.getDefault(), "CPU: %.1f%%", status.cpu));
+            layout.setTextViewText(R.id.customNotification_memory, "Memory: " + CommonUtils.dimensionFormatter(status.rss, false));
+        } else {
+            layout.setTextViewText(R.id.customNotification_pid, "PID: " + update.pid());
+            layout.setTextViewText(R.id.customNotification_cpu, String.format(Locale.getDefault(), "CPU: %.1f%%", update.cpu()));
+            layout.setTextViewText(R.id.customNotification_memory, "Memory: " + CommonUtils.dimensionFormatter(update.rss(), false));
+        }
         layout.setImageViewResource(R.id.customNotification_icon, provider.launcherIcon());
         layout.setImageViewResource(R.id.customNotification_stop, R.drawable.baseline_clear_24);
         layout.setOnClickPendingIntent(R.id.customNotification_stop, getStopServiceIntent());
-        defaultNotification.setCustomContentView(layout);
-
-        notificationManager.notify(NOTIFICATION_ID, defaultNotification.build());
-
-        update.recycle();
+        synchronized (defaultNotification) {
+            defaultNotification.setCustomContentView(layout);
+            notificationManager.notify(NOTIFICATION_ID, defaultNotification.build());
+        }
     }
 
     private void dispatch(@NonNull com.gianlu.aria2lib.internal.Message msg) {
+        ServiceState state = ServiceState.get();
+        synchronized (state) {
+            // Post under the record lock so events reach the dispatcher in sequence order
+            frameDispatcher.post(state.record(msg));
+        }
+
+        if (!Platform.config().broadcastMessages()) return;
+
         Intent intent = new Intent(BROADCAST_MESSAGE);
         intent.putExtra("type", msg.type());
+        intent.putExtra("instance", msg.instance());
         intent.putExtra("i", msg.integer());
-        if (msg.object() instanceof Serializable) intent.putExtra("o", (Serializable) msg.object());
+        if (msg.object() instanceof MonitorUpdate)
+            intent.putExtra("o", ((MonitorUpdate) msg.object()).snapshot());
+        else if (msg.object() instanceof Serializable)
+            intent.putExtra("o", (Serializable) msg.object());
         broadcastManager.sendBroadcast(intent);
     }
 
@@ -251,10 +343,44 @@ public final class Aria2Service extends Service implements Aria2.MessageListener
         if (broadcastManager == null) return;
 
         Intent intent = new Intent(BROADCAST_STATUS);
-        intent.putExtra("on", aria2.isRunning());
+        intent.putExtra("on", cluster.isRunning());
         broadcastManager.sendBroadcast(intent);
     }
 
+    @UiThread
+    public interface Subscriber {
+        void onSnapshot(@NonNull ServiceState.Snapshot snapshot);
+
+        void onEvents(@NonNull List<ServiceEvent> events);
+    }
+
+    public static final class LocalBinder extends Binder {
+        private final Aria2Service service;
+
+        private LocalBinder(@NonNull Aria2Service service) {
+            this.service = service;
+        }
+
+        @NonNull
+        public Messenger messenger() {
+            return service.messenger;
+        }
+
+        @UiThread
+        public void subscribe(@NonNull Subscriber subscriber, long since) {
+            Map<Integer, Integer> pids = new HashMap<>();
+            for (Aria2 aria2 : service.cluster.instances())
+                if (aria2.isRunning()) pids.put(aria2.id(), aria2.pid());
+
+            service.frameDispatcher.subscribe(subscriber, ServiceState.get(), since, service.cluster.isRunning(), service.startTime, pids);
+        }
+
+        @UiThread
+        public void unsubscribe(@NonNull Subscriber subscriber) {
+            service.frameDispatcher.unsubscribe(subscriber);
+        }
+    }
+
     private static class LocalHandler extends Handler {
         private final Aria2Service service;
 
@@ -0,0 +1,352 @@
+package com.gianlu.aria2lib.internal;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gianlu.aria2lib.Aria2PK;
+import com.gianlu.commonutils.preferences.json.JsonStoring;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public final class AutoTuner implements Aria2.MessageListener {
+    private static final String TAG = AutoTuner.class.getSimpleName();
+    // Only options that apply to running downloads without restarting them, split and max-connection-per-server don't
+    private static final String[] KEYS = {"max-concurrent-downloads", "bt-max-peers"};
+    private static final int[] MIN = {1, 10};
+    private static final int[] MAX = {16, 100};
+    private static final int[] STEP = {1, 10};
+    private static final int BT_MAX_PEERS = 1;
+    private static final int MAX_CONCURRENT_DOWNLOADS = 0;
+    private static final int SAMPLE_INTERVAL_SEC = 2;
+    private static final int EPOCH_SAMPLES = 5;
+    private static final float IMPROVEMENT_THRESHOLD = 0.05f;
+    private static final float BEST_DECAY = 0.98f;
+    private static final float MAX_CPU = 85;
+    private static final long MAX_RSS = 256L * 1024 * 1024;
+    private static final int MAX_DECISIONS = 100;
+    private final Context context;
+    private final Aria2 aria2;
+    private final MemoryGovernor governor;
+    private final LinkedList<Decision> decisions = new LinkedList<>();
+    private final int[] values = new int[KEYS.length];
+    private final int[] best = new int[KEYS.length];
+    private Executor executor;
+    private ScheduledFuture<?> sampling;
+    private String networkType;
+    private double bestThroughput = -1;
+    private long speedSum = 0;
+    private int samples = 0;
+    private int param = 0;
+    private int direction = 1;
+    private boolean reversed = false;
+    private boolean paused = false;
+    private volatile boolean initialized = false;
+    private volatile float cpu = 0;
+    private volatile long rss = 0;
+
+    public AutoTuner(@NonNull Context context, @NonNull Aria2 aria2, @Nullable MemoryGovernor governor) {
+        this.context = context.getApplicationContext();
+        this.aria2 = aria2;
+        this.governor = governor;
+    }
+
+    @NonNull
+    private static String networkType(@NonNull Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) return "unknown";
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            NetworkCapabilities caps = cm.getNetworkCapabilities(cm.getActiveNetwork());
+            if (caps == null) return "none";
+            else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) return "ethernet";
+            else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) return "wifi";
+            else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) return "cellular";
+            else return "other";
+        } else {
+            NetworkInfo info = cm.getActiveNetworkInfo();
+            if (info == null) return "none";
+
+            switch (info.getType()) {
+                case ConnectivityManager.TYPE_ETHERNET:
+                    return "ethernet";
+                case ConnectivityManager.TYPE_WIFI:
+                    return "wifi";
+                case ConnectivityManager.TYPE_MOBILE:
+                    return "cellular";
+                default:
+                    return "other";
+            }
+        }
+    }
+
+    private static int clamp(int i, int value) {
+        return Math.max(MIN[i], Math.min(MAX[i], value));
+    }
+
+    @Nullable
+    private static JSONObject loadBest(@NonNull String networkType) {
+        try {
+            JSONObject obj = JsonStoring.intoPrefs().getJsonObject(Aria2PK.AUTO_TUNING_BEST);
+            return obj == null ? null : obj.optJSONObject(networkType);
+        } catch (JSONException ex) {
+            Log.w(TAG, "Failed loading tuned options.", ex);
+            return null;
+        }
+    }
+
+    public synchronized void start() {
+        if (executor != null) return;
+
+        Executor executor = this.executor = Scheduler.get().serial("aria2-autoTuner-" + aria2.id());
+        executor.execute(() -> initialized = init());
+        sampling = Scheduler.get().scheduleWithFixedDelay(() -> executor.execute(this::sample), SAMPLE_INTERVAL_SEC, SAMPLE_INTERVAL_SEC, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor == null) return;
+
+        sampling.cancel(false);
+        sampling = null;
+        executor = null;
+    }
+
+    @NonNull
+    public List<Decision> decisions() {
+        synchronized (decisions) {
+            return Collections.unmodifiableList(new ArrayList<>(decisions));
+        }
+    }
+
+    @Override
+    public void onMessage(@NonNull Message msg) {
+        if (msg.instance() != aria2.id()) return;
+
+        // A restarted aria2c is back to its start options, the tuned state is stale
+        if (msg.type() == Message.Type.PROCESS_STARTED) {
+            initialized = false;
+            return;
+        }
+
+        if (msg.type() != Message.Type.MONITOR_UPDATE) return;
+
+        MonitorUpdate update = (MonitorUpdate) msg.object();
+        if (update == null) return;
+
+        cpu = update.cpu();
+        rss = update.rss();
+    }
+
+    private boolean init() {
+        Aria2Rpc rpc = aria2.rpc();
+        if (rpc == null) return false;
+
+        networkType = networkType(context);
+        bestThroughput = -1;
+        speedSum = 0;
+        samples = 0;
+        try {
+            Map<String, String> current = rpc.getGlobalOption();
+            for (int i = 0; i < KEYS.length; i++) {
+                try {
+                    int value = Integer.parseInt(current.get(KEYS[i]));
+                    values[i] = clamp(i, value == 0 ? MAX[i] : value);
+                } catch (NumberFormatException ex) {
+                    values[i] = MIN[i];
+                }
+            }
+
+            JSONObject saved = loadBest(networkType);
+            if (saved != null) {
+                for (int i = 0; i < KEYS.length; i++) {
+                    int value = clamp(i, saved.optInt(KEYS[i], values[i]));
+                    if (value != values[i]) record(i, values[i], value, 0, "restore best for " + networkType);
+                    values[i] = value;
+                }
+
+                apply(rpc);
+            }
+
+            System.arraycopy(values, 0, best, 0, values.length);
+            return true;
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed initializing auto tuner.", ex);
+            return false;
+        }
+    }
+
+    private void sample() {
+        Aria2Rpc rpc = aria2.rpc();
+        if (rpc == null) return;
+
+        // The governor caps max-concurrent-downloads under memory pressure, don't undo it
+        if (governor != null && governor.level() != MemoryGovernor.Level.NORMAL) {
+            speedSum = 0;
+            samples = 0;
+            paused = true;
+            return;
+        }
+
+        if (paused) {
+            paused = false;
+            initialized = false;
+        }
+
+        // aria2c may not be listening yet when started, never tune from unknown values
+        if (!initialized) {
+            initialized = init();
+            return;
+        }
+
+        try {
+            Map<String, String> stat = rpc.getGlobalStat();
+            if (Integer.parseInt(stat.get("numActive")) == 0) {
+                speedSum = 0;
+                samples = 0;
+                return;
+            }
+
+            speedSum += Long.parseLong(stat.get("downloadSpeed"));
+            if (++samples >= EPOCH_SAMPLES) {
+                double throughput = speedSum / (double) samples;
+                speedSum = 0;
+                samples = 0;
+                epoch(rpc, throughput);
+            }
+        } catch (IOException | NumberFormatException ex) {
+            Log.w(TAG, "Failed sampling throughput.", ex);
+        }
+    }
+
+    private void epoch(@NonNull Aria2Rpc rpc, double throughput) throws IOException {
+        String type = networkType(context);
+        if (!type.equals(networkType)) {
+            initialized = init();
+            return;
+        }
+
+        if (cpu > MAX_CPU || rss > MAX_RSS) {
+            if (values[MAX_CONCURRENT_DOWNLOADS] > MIN[MAX_CONCURRENT_DOWNLOADS]) {
+                change(MAX_CONCURRENT_DOWNLOADS, values[MAX_CONCURRENT_DOWNLOADS] - 1, throughput, "overloaded (cpu=" + cpu + "%, rss=" + rss + ")");
+                apply(rpc);
+            }
+
+            return;
+        }
+
+        if (bestThroughput < 0) {
+            bestThroughput = throughput;
+            System.arraycopy(values, 0, best, 0, values.length);
+        } else if (throughput > bestThroughput * (1 + IMPROVEMENT_THRESHOLD)) {
+            bestThroughput = throughput;
+            System.arraycopy(values, 0, best, 0, values.length);
+            reversed = false;
+            persistBest();
+        } else {
+            for (int i = 0; i < KEYS.length; i++) {
+                if (values[i] != best[i]) change(i, best[i], throughput, "no improvement, revert");
+            }
+
+            if (reversed) {
+                param = (param + 1) % KEYS.length;
+                direction = 1;
+                reversed = false;
+            } else {
+                direction = -direction;
+                reversed = true;
+            }
+
+            bestThroughput *= BEST_DECAY;
+        }
+
+        int next = clamp(param, values[param] + direction * STEP[param]);
+        if (next != values[param]) change(param, next, throughput, direction > 0 ? "climb" : "descend");
+        apply(rpc);
+    }
+
+    private void change(int i, int value, double throughput, @NonNull String reason) {
+        record(i, values[i], value, throughput, reason);
+        values[i] = value;
+    }
+
+    private void record(int i, int from, int to, double throughput, @NonNull String reason) {
+        Decision decision = new Decision(System.currentTimeMillis(), KEYS[i], from, to, (long) throughput, reason);
+        Log.i(TAG, decision.toString());
+
+        synchronized (decisions) {
+            decisions.addLast(decision);
+            if (decisions.size() > MAX_DECISIONS) decisions.removeFirst();
+        }
+    }
+
+    private void apply(@NonNull Aria2Rpc rpc) throws IOException {
+        if (governor != null && governor.level() != MemoryGovernor.Level.NORMAL) return;
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < KEYS.length; i++) options.put(KEYS[i], String.valueOf(values[i]));
+        rpc.changeGlobalOption(options);
+        aria2.recordLiveOptions(options);
+
+        // The global value only applies to torrents added later
+        Map<String, String> peers = Collections.singletonMap(KEYS[BT_MAX_PEERS], String.valueOf(values[BT_MAX_PEERS]));
+        for (Map<String, String> download : rpc.tellActive("gid", "bittorrent"))
+            if (download.containsKey("bittorrent")) rpc.changeOption(download.get("gid"), peers);
+    }
+
+    private void persistBest() {
+        try {
+            JSONObject obj = JsonStoring.intoPrefs().getJsonObject(Aria2PK.AUTO_TUNING_BEST);
+            if (obj == null) obj = new JSONObject();
+
+            JSONObject entry = new JSONObject();
+            for (int i = 0; i < KEYS.length; i++) entry.put(KEYS[i], best[i]);
+            obj.put(networkType, entry);
+
+            JsonStoring.intoPrefs().putJsonObject(Aria2PK.AUTO_TUNING_BEST, obj);
+        } catch (JSONException ex) {
+            Log.w(TAG, "Failed saving tuned options.", ex);
+        }
+    }
+
+    public static class Decision {
+        public final long time;
+        public final String key;
+        public final int from;
+        public final int to;
+        public final long throughput;
+        public final String reason;
+
+        Decision(long time, @NonNull String key, int from, int to, long throughput, @NonNull String reason) {
+            this.time = time;
+            this.key = key;
+            this.from = from;
+            this.to = to;
+            this.throughput = throughput;
+            this.reason = reason;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Decision{key=" + key + ", from=" + from + ", to=" + to + ", throughput=" + throughput + ", reason=" + reason + '}';
+        }
+    }
+}
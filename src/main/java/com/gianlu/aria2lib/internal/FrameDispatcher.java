@@ -0,0 +1,139 @@
+package com.gianlu.aria2lib.internal;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+final class FrameDispatcher implements Choreographer.FrameCallback {
+    private static final String TAG = FrameDispatcher.class.getSimpleName();
+    private static final int MAX_PENDING = 4096;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> conflatable = new HashMap<>();
+    private final Object lock = new Object();
+    private final Runnable schedule = () -> Choreographer.getInstance().postFrameCallback(this);
+    private List<ServiceEvent> pending = new ArrayList<>();
+    private boolean scheduled = false;
+    private int dropped = 0;
+
+    @Nullable
+    private static String conflationKey(@NonNull ServiceEvent event) {
+        if (event.type == Message.Type.MONITOR_UPDATE) {
+            return "monitor:" + event.instance;
+        } else if (event.type == Message.Type.DOWNLOAD_PROGRESS) {
+            DownloadProgress progress = event.object(DownloadProgress.class);
+            return progress == null ? null : "progress:" + event.instance + ':' + progress.gid;
+        } else {
+            return null;
+        }
+    }
+
+    @NonNull
+    private static List<ServiceEvent> after(@NonNull List<ServiceEvent> events, long seq) {
+        boolean filter = false;
+        for (ServiceEvent event : events) {
+            if (event.seq <= seq) {
+                filter = true;
+                break;
+            }
+        }
+
+        if (!filter) return events;
+
+        List<ServiceEvent> list = new ArrayList<>(events.size());
+        for (ServiceEvent event : events)
+            if (event.seq > seq) list.add(event);
+
+        return Collections.unmodifiableList(list);
+    }
+
+    @UiThread
+    void subscribe(@NonNull Aria2Service.Subscriber subscriber, @NonNull ServiceState state, long since, boolean running, long startTime, @NonNull Map<Integer, Integer> pids) {
+        for (Subscription subscription : subscriptions)
+            if (subscription.subscriber == subscriber) return;
+
+        // Register before taking the snapshot, events recorded in between are filtered out by sequence number
+        Subscription subscription = new Subscription(subscriber);
+        subscriptions.add(subscription);
+
+        ServiceState.Snapshot snapshot = state.snapshot(since, running, startTime, pids);
+        subscription.delivered = snapshot.seq;
+        subscriber.onSnapshot(snapshot);
+    }
+
+    @UiThread
+    void unsubscribe(@NonNull Aria2Service.Subscriber subscriber) {
+        for (Subscription subscription : subscriptions)
+            if (subscription.subscriber == subscriber) subscriptions.remove(subscription);
+    }
+
+    void post(@NonNull ServiceEvent event) {
+        if (subscriptions.isEmpty()) return;
+
+        String key = conflationKey(event);
+        synchronized (lock) {
+            Integer index = key == null ? null : conflatable.get(key);
+            if (index != null) {
+                pending.set(index, event);
+            } else if (pending.size() >= MAX_PENDING) {
+                dropped++;
+            } else {
+                if (key != null) conflatable.put(key, pending.size());
+                pending.add(event);
+            }
+
+            if (!scheduled) {
+                scheduled = true;
+                handler.post(schedule);
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        List<ServiceEvent> batch;
+        int dropped;
+        synchronized (lock) {
+            batch = pending;
+            dropped = this.dropped;
+            pending = new ArrayList<>();
+            conflatable.clear();
+            scheduled = false;
+            this.dropped = 0;
+        }
+
+        if (dropped > 0) Log.w(TAG, "Dropped " + dropped + " events, main thread is not keeping up.");
+        if (batch.isEmpty()) return;
+
+        long last = 0;
+        for (ServiceEvent event : batch) last = Math.max(last, event.seq);
+
+        List<ServiceEvent> events = Collections.unmodifiableList(batch);
+        for (Subscription subscription : subscriptions) {
+            List<ServiceEvent> list = after(events, subscription.delivered);
+            subscription.delivered = Math.max(subscription.delivered, last);
+            if (!list.isEmpty()) subscription.subscriber.onEvents(list);
+        }
+    }
+
+    private static final class Subscription {
+        final Aria2Service.Subscriber subscriber;
+        long delivered = 0;
+
+        Subscription(@NonNull Aria2Service.Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+    }
+}
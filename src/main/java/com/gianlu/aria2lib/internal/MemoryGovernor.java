@@ -0,0 +1,190 @@
+package com.gianlu.aria2lib.internal;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public final class MemoryGovernor implements Aria2.MessageListener {
+    private static final String TAG = MemoryGovernor.class.getSimpleName();
+    private static final long QUIET_PERIOD = TimeUnit.SECONDS.toMillis(60);
+    private static final float[] RSS_THRESHOLDS = {0.15f, 0.25f, 0.35f};
+    private static final String[] DISK_CACHE_CAPS = {null, "8M", "4M", "0"};
+    private final Aria2Cluster cluster;
+    private final long totalMemory;
+    private final Executor executor = Scheduler.get().serial("aria2-memoryGovernor");
+    private final ScheduledFuture<?> recovery;
+    private final Map<Integer, int[]> baselines = new HashMap<>();
+    private volatile Level level = Level.NORMAL;
+    private volatile long lastPressure = 0;
+
+    public MemoryGovernor(@NonNull Context context, @NonNull Aria2Cluster cluster) {
+        this.cluster = cluster;
+
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am != null) {
+            ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+            am.getMemoryInfo(info);
+            totalMemory = info.totalMem;
+        } else {
+            totalMemory = 0;
+        }
+
+        recovery = Scheduler.get().scheduleWithFixedDelay(this::checkRecovery, QUIET_PERIOD, QUIET_PERIOD / 4, TimeUnit.MILLISECONDS);
+    }
+
+    @NonNull
+    private static Level fromTrimLevel(int trim) {
+        if (trim >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) return Level.CRITICAL;
+        else if (trim >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) return Level.HIGH;
+        else if (trim >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) return Level.ELEVATED;
+        else if (trim == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) return Level.NORMAL;
+        else if (trim >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) return Level.CRITICAL;
+        else if (trim >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) return Level.HIGH;
+        else if (trim >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) return Level.ELEVATED;
+        else return Level.NORMAL;
+    }
+
+    @NonNull
+    public Level level() {
+        return level;
+    }
+
+    public void onTrimMemory(int trim) {
+        signal(fromTrimLevel(trim), "onTrimMemory(" + trim + ")");
+    }
+
+    public void onLowMemory() {
+        signal(Level.CRITICAL, "onLowMemory");
+    }
+
+    @Override
+    public void onMessage(@NonNull Message msg) {
+        if (msg.type() != Message.Type.MONITOR_UPDATE || totalMemory <= 0) return;
+
+        long rss = cluster.status().rss;
+        Level target = Level.NORMAL;
+        for (int i = RSS_THRESHOLDS.length - 1; i >= 0; i--) {
+            if (rss > totalMemory * RSS_THRESHOLDS[i]) {
+                target = Level.values()[i + 1];
+                break;
+            }
+        }
+
+        if (target != Level.NORMAL) signal(target, "rss=" + rss);
+    }
+
+    private void checkRecovery() {
+        Level current = level;
+        if (current == Level.NORMAL || System.currentTimeMillis() - lastPressure < QUIET_PERIOD) return;
+
+        lastPressure = System.currentTimeMillis();
+        change(Level.values()[current.ordinal() - 1], "no pressure for " + QUIET_PERIOD + "ms");
+    }
+
+    public void close() {
+        recovery.cancel(false);
+    }
+
+    private void signal(@NonNull Level target, @NonNull String reason) {
+        if (target == Level.NORMAL) return;
+
+        lastPressure = System.currentTimeMillis();
+        if (target.ordinal() > level.ordinal()) change(target, reason);
+    }
+
+    private synchronized void change(@NonNull Level to, @NonNull String reason) {
+        Level from = level;
+        if (from == to) return;
+
+        level = to;
+        executor.execute(() -> apply(from, to, reason));
+    }
+
+    private void apply(@NonNull Level from, @NonNull Level to, @NonNull String reason) {
+        Map<String, String> applied = new HashMap<>();
+        for (Aria2 aria2 : cluster.instances()) {
+            aria2.setDiskCacheCap(DISK_CACHE_CAPS[to.ordinal()]);
+
+            Aria2Rpc rpc = aria2.rpc();
+            if (rpc == null) continue;
+
+            try {
+                int[] baseline = baselines.get(aria2.id());
+                if (from == Level.NORMAL || baseline == null) {
+                    Map<String, String> current = rpc.getGlobalOption();
+                    baseline = new int[]{Integer.parseInt(current.get("max-concurrent-downloads")), Integer.parseInt(current.get("bt-max-peers"))};
+                    baselines.put(aria2.id(), baseline);
+                }
+
+                int concurrent = Math.max(1, (int) (baseline[0] * to.factor));
+                int peers = baseline[1] == 0 ? (to == Level.NORMAL ? 0 : 55) : baseline[1];
+                if (to != Level.NORMAL) peers = Math.max(5, (int) (peers * to.factor / 2));
+
+                Map<String, String> options = new HashMap<>();
+                options.put("max-concurrent-downloads", String.valueOf(concurrent));
+                options.put("bt-max-peers", String.valueOf(peers));
+                rpc.changeGlobalOption(options);
+                aria2.recordLiveOptions(options);
+
+                Map<String, String> peersOption = Collections.singletonMap("bt-max-peers", String.valueOf(peers));
+                for (Map<String, String> download : rpc.tellActive("gid", "bittorrent")) {
+                    if (download.containsKey("bittorrent")) rpc.changeOption(download.get("gid"), peersOption);
+                }
+
+                applied.putAll(options);
+                if (to == Level.NORMAL) baselines.remove(aria2.id());
+            } catch (IOException | RuntimeException ex) {
+                Log.w(TAG, "Failed applying memory level to instance " + aria2.id(), ex);
+            }
+        }
+
+        String diskCache = DISK_CACHE_CAPS[to.ordinal()];
+        if (diskCache != null) applied.put("disk-cache (next start)", diskCache);
+
+        cluster.publish(Message.obtain(Message.Type.MEMORY_LEVEL_CHANGED, to.ordinal(), new LevelChange(from, to, reason, cluster.status().rss, applied)));
+    }
+
+    public enum Level {
+        NORMAL(1), ELEVATED(0.75f), HIGH(0.5f), CRITICAL(0);
+
+        private final float factor;
+
+        Level(float factor) {
+            this.factor = factor;
+        }
+    }
+
+    public static class LevelChange implements Serializable {
+        public final Level from;
+        public final Level to;
+        public final String reason;
+        public final long rss;
+        public final Map<String, String> options;
+
+        LevelChange(@NonNull Level from, @NonNull Level to, @NonNull String reason, long rss, @NonNull Map<String, String> options) {
+            this.from = from;
+            this.to = to;
+            this.reason = reason;
+            this.rss = rss;
+            this.options = Collections.unmodifiableMap(new HashMap<>(options));
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "LevelChange{from=" + from + ", to=" + to + ", reason=" + reason + ", rss=" + rss + ", options=" + options + '}';
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+public final class ServiceEvent {
+    public final long seq;
+    public final Message.Type type;
+    public final int instance;
+    public final int i;
+    public final Object o;
+
+    ServiceEvent(long seq, @NonNull Message.Type type, int instance, int i, @Nullable Object o) {
+        this.seq = seq;
+        this.type = type;
+        this.instance = instance;
+        this.i = i;
+        this.o = o;
+    }
+
+    @Nullable
+    public <T> T object(@NonNull Class<T> clazz) {
+        return clazz.isInstance(o) ? clazz.cast(o) : null;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ServiceEvent{seq=" + seq + ", type=" + type + ", instance=" + instance + ", i=" + i + ", o=" + o + '}';
+    }
+}
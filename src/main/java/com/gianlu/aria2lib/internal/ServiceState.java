@@ -0,0 +1,88 @@
+package com.gianlu.aria2lib.internal;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class ServiceState {
+    public static final int MAX_EVENTS = 256;
+    private static ServiceState instance;
+    private final ServiceEvent[] events = new ServiceEvent[MAX_EVENTS];
+    private final Map<Integer, MonitorUpdate> monitors = new HashMap<>();
+    private long seq = 0;
+    private int head = 0;
+    private int count = 0;
+    private long evicted = 0;
+
+    private ServiceState() {
+    }
+
+    @NonNull
+    static synchronized ServiceState get() {
+        if (instance == null) instance = new ServiceState();
+        return instance;
+    }
+
+    @NonNull
+    synchronized ServiceEvent record(@NonNull Message msg) {
+        Object obj = msg.object();
+        if (obj instanceof MonitorUpdate) obj = ((MonitorUpdate) obj).snapshot();
+
+        ServiceEvent event = new ServiceEvent(++seq, msg.type(), msg.instance(), msg.integer(), obj);
+        if (event.type == Message.Type.MONITOR_UPDATE) {
+            if (obj != null) monitors.put(event.instance, (MonitorUpdate) obj);
+        } else if (event.type != Message.Type.DOWNLOAD_PROGRESS) {
+            if (count == MAX_EVENTS) evicted = events[head].seq;
+
+            events[(head + count) % MAX_EVENTS] = event;
+            if (count < MAX_EVENTS) count++;
+            else head = (head + 1) % MAX_EVENTS;
+        }
+
+        return event;
+    }
+
+    @NonNull
+    synchronized Snapshot snapshot(long since, boolean running, long startTime, @NonNull Map<Integer, Integer> pids) {
+        List<ServiceEvent> replay = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ServiceEvent event = events[(head + i) % MAX_EVENTS];
+            if (event.seq > since) replay.add(event);
+        }
+
+        // Sequence numbers of monitor and progress messages are never stored, only an evicted event is a gap
+        boolean truncated = since > 0 && evicted > since;
+        return new Snapshot(seq, running, startTime, pids, new HashMap<>(monitors), replay, truncated);
+    }
+
+    public static final class Snapshot {
+        public final long seq;
+        public final boolean running;
+        public final long startTime;
+        public final Map<Integer, Integer> pids;
+        public final Map<Integer, MonitorUpdate> monitors;
+        public final List<ServiceEvent> events;
+        public final boolean truncated;
+
+        Snapshot(long seq, boolean running, long startTime, @NonNull Map<Integer, Integer> pids, @NonNull Map<Integer, MonitorUpdate> monitors,
+                 @NonNull List<ServiceEvent> events, boolean truncated) {
+            this.seq = seq;
+            this.running = running;
+            this.startTime = startTime;
+            this.pids = Collections.unmodifiableMap(pids);
+            this.monitors = Collections.unmodifiableMap(monitors);
+            this.events = Collections.unmodifiableList(events);
+            this.truncated = truncated;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Snapshot{seq=" + seq + ", running=" + running + ", startTime=" + startTime + ", pids=" + pids + ", events=" + events.size() + ", truncated=" + truncated + '}';
+        }
+    }
+}
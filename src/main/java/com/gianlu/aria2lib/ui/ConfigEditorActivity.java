@@ -3,8 +3,12 @@ package com.gianlu.aria2lib.ui;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.util.Log;
 import android.util.Pair;
 import android.view.Menu;
@@ -13,12 +17,18 @@ import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.widget.SearchView;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.gianlu.aria2lib.Aria2PK;
 import com.gianlu.aria2lib.R;
+import com.gianlu.aria2lib.internal.AndroidPlatform;
+import com.gianlu.aria2lib.internal.Aria2Cluster;
+import com.gianlu.aria2lib.internal.OptionsReconciler;
+import com.gianlu.aria2lib.internal.Scheduler;
 import com.gianlu.commonutils.CommonUtils;
 import com.gianlu.commonutils.dialogs.ActivityWithDialog;
 import com.gianlu.commonutils.misc.RecyclerMessageView;
@@ -32,16 +42,38 @@ import org.json.JSONException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 public class ConfigEditorActivity extends ActivityWithDialog implements SimpleOptionsAdapter.Listener {
     private static final int IMPORT_CODE = 1;
     private static final String TAG = ConfigEditorActivity.class.getSimpleName();
+    private final Executor saveExecutor = Scheduler.get().serial("aria2-saveOptions");
     private SimpleOptionsAdapter adapter;
     private RecyclerMessageView rmv;
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.aria2lib_config_editor, menu);
+
+        SearchView searchView = (SearchView) menu.findItem(R.id.configEditor_search).getActionView();
+        if (searchView != null) {
+            searchView.setQueryHint(getString(R.string.searchOptions));
+            searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+                @Override
+                public boolean onQueryTextSubmit(String query) {
+                    adapter.filter(query);
+                    return true;
+                }
+
+                @Override
+                public boolean onQueryTextChange(String newText) {
+                    adapter.filter(newText);
+                    return true;
+                }
+            });
+        }
+
         return true;
     }
 
@@ -74,14 +106,48 @@ public class ConfigEditorActivity extends ActivityWithDialog implements SimpleOp
         }
     }
 
-    private void save() {
-        try {
-            JsonStoring.intoPrefs().putJsonObject(Aria2PK.CUSTOM_OPTIONS, ImportExportUtils.toJson(adapter.get()));
-            adapter.saved();
-        } catch (JSONException ex) {
-            Log.e(TAG, "Failed saving JSON.", ex);
-            Toaster.with(this).message(R.string.failedSavingCustomOptions).show();
-        }
+    private void save(@Nullable Runnable then) {
+        List<Pair<String, String>> options = adapter.get();
+        int version = adapter.version();
+        Context context = getApplicationContext();
+        saveExecutor.execute(() -> {
+            try {
+                JsonStoring.intoPrefs().putJsonObject(Aria2PK.CUSTOM_OPTIONS, ImportExportUtils.toJson(options));
+                runOnUiThread(() -> {
+                    adapter.saved(version);
+                    applyToRunning(context);
+                    if (then != null && !isFinishing()) then.run();
+                });
+            } catch (JSONException ex) {
+                Log.e(TAG, "Failed saving JSON.", ex);
+                runOnUiThread(() -> Toaster.with(context).message(R.string.failedSavingCustomOptions).show());
+            }
+        });
+    }
+
+    // Outlives the activity, only the application context is used
+    private static void applyToRunning(@NonNull Context context) {
+        AndroidPlatform.install(context);
+        Aria2Cluster cluster = Aria2Cluster.get();
+        if (!cluster.isRunning()) return;
+
+        Handler handler = new Handler(Looper.getMainLooper());
+        Scheduler.get().runBlocking("aria2-optionsReconciler", () -> {
+            try {
+                OptionsReconciler.Result result = OptionsReconciler.reconcile(cluster);
+                Log.i(TAG, "Reconciled custom options: " + result);
+
+                handler.post(() -> {
+                    if (result.needsRestart())
+                        Toaster.with(context).message(R.string.optionsRequireRestart, TextUtils.join(", ", result.restartRequired)).show();
+                    else if (!result.applied.isEmpty())
+                        Toaster.with(context).message(R.string.optionsAppliedLive).show();
+                });
+            } catch (IOException ex) {
+                Log.e(TAG, "Failed applying custom options.", ex);
+                handler.post(() -> Toaster.with(context).message(R.string.optionsRequireRestart, context.getString(R.string.allOptions)).show());
+            }
+        });
     }
 
     @SuppressLint("InflateParams")
@@ -134,10 +200,7 @@ public class ConfigEditorActivity extends ActivityWithDialog implements SimpleOp
                 AlertDialog.Builder builder = new AlertDialog.Builder(this);
                 builder.setTitle(R.string.unsavedChanges)
                         .setMessage(R.string.unsavedChanges_message)
-                        .setPositiveButton(R.string.yes, (dialogInterface, i) -> {
-                            save();
-                            onBackPressed();
-                        })
+                        .setPositiveButton(R.string.yes, (dialogInterface, i) -> save(this::onBackPressed))
                         .setNegativeButton(R.string.no, (dialogInterface, i) -> onBackPressed())
                         .setNeutralButton(android.R.string.cancel, null);
 
@@ -155,8 +218,7 @@ public class ConfigEditorActivity extends ActivityWithDialog implements SimpleOp
             }
             return true;
         } else if (id == R.id.configEditor_done) {
-            save();
-            onBackPressed();
+            save(this::onBackPressed);
             return true;
         }
 
@@ -186,6 +248,7 @@ public class ConfigEditorActivity extends ActivityWithDialog implements SimpleOp
     @Override
     public void onItemsCountChanged(int count) {
         if (count <= 0) rmv.showInfo(R.string.noCustomOptions);
+        else if (adapter != null && adapter.isFiltered() && adapter.getItemCount() == 0) rmv.showInfo(R.string.noMatchingOptions);
         else rmv.showList();
     }
 }
@@ -11,6 +11,7 @@ import androidx.annotation.Nullable;
 
 import com.gianlu.aria2lib.Aria2PK;
 import com.gianlu.aria2lib.R;
+import com.gianlu.aria2lib.internal.ConfigFile;
 import com.gianlu.commonutils.CommonUtils;
 import com.gianlu.commonutils.dialogs.DialogUtils;
 import com.gianlu.commonutils.preferences.Prefs;
@@ -28,6 +29,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public final class ImportExportUtils {
 
@@ -87,14 +89,8 @@ public final class ImportExportUtils {
         String str = CommonUtils.readEntirely(in);
 
         List<Pair<String, String>> list = new ArrayList<>();
-        String[] lines = str.split("\n");
-        for (String line : lines) {
-            line = line.trim();
-            if (line.startsWith("#")) continue;
-            String[] split = line.split("=");
-            if (split.length > 0)
-                list.add(new Pair<>(split[0], split.length == 1 ? null : split[1]));
-        }
+        for (Map.Entry<String, String> entry : ConfigFile.parse(str))
+            list.add(new Pair<>(entry.getKey(), entry.getValue()));
 
         return list;
     }
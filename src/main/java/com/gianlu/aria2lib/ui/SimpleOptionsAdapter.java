@@ -10,6 +10,8 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.gianlu.aria2lib.R;
@@ -21,25 +23,52 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @UiThread
 public class SimpleOptionsAdapter extends RecyclerView.Adapter<SimpleOptionsAdapter.ViewHolder> {
-    private final List<Pair<String, String>> options;
+    private static final DiffUtil.ItemCallback<Item> DIFF_CALLBACK = new DiffUtil.ItemCallback<Item>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Item oldItem, @NonNull Item newItem) {
+            return oldItem.key.equals(newItem.key);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Item oldItem, @NonNull Item newItem) {
+            return oldItem.value.equals(newItem.value) && oldItem.edited == newItem.edited;
+        }
+    };
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final Set<String> edited = new HashSet<>();
+    private final AsyncListDiffer<Item> differ;
     private final LayoutInflater inflater;
     private final Listener listener;
-    private final Set<Integer> edited;
+    private String query = "";
+    private List<String> matches = null;
+    private int version = 0;
     private boolean changed = false;
 
     public SimpleOptionsAdapter(@NonNull Context context, Listener listener) {
-        this.options = new ArrayList<>();
         this.inflater = LayoutInflater.from(context);
         this.listener = listener;
-        this.edited = new HashSet<>();
+        this.differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+        this.differ.addListListener((previousList, currentList) -> {
+            if (listener != null) listener.onItemsCountChanged(options.size());
+        });
+
         if (listener != null) listener.onItemsCountChanged(options.size());
     }
 
+    private static boolean contains(@NonNull String str, @NonNull String query) {
+        for (int i = 0; i <= str.length() - query.length(); i++)
+            if (str.regionMatches(true, i, query, 0, query.length())) return true;
+
+        return false;
+    }
+
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -48,34 +77,78 @@ public class SimpleOptionsAdapter extends RecyclerView.Adapter<SimpleOptionsAdap
 
     @Override
     public void onBindViewHolder(@NonNull final ViewHolder holder, int position) {
-        Pair<String, String> entry = options.get(position);
+        Item item = differ.getCurrentList().get(position);
 
-        holder.key.setText(entry.first);
-        holder.value.setText(entry.second);
+        holder.key.setText(item.key);
+        holder.value.setText(item.value);
         holder.edit.setOnClickListener(view -> {
-            if (listener != null) listener.onEditOption(entry);
+            if (listener != null) listener.onEditOption(new Pair<>(item.key, item.value));
         });
         holder.delete.setOnClickListener(view -> remove(holder.getAdapterPosition()));
 
-        if (edited.contains(position)) CommonUtils.setTextColor(holder.value, R.color.colorPrimary);
+        if (item.edited) CommonUtils.setTextColor(holder.value, R.color.colorPrimary);
         else CommonUtils.setTextColor(holder.value, android.R.color.tertiary_text_light);
     }
 
     @Override
     public int getItemCount() {
-        return options.size();
+        return differ.getCurrentList().size();
+    }
+
+    private void submit() {
+        List<Item> items = new ArrayList<>(matches == null ? options.size() : matches.size());
+        List<String> keys = query.isEmpty() ? null : new ArrayList<>();
+        for (String key : matches == null ? options.keySet() : matches) {
+            String value = options.get(key);
+            if (value == null || (keys != null && !contains(key, query) && !contains(value, query)))
+                continue;
+
+            if (keys != null) keys.add(key);
+            items.add(new Item(key, value, edited.contains(key)));
+        }
+
+        matches = keys;
+        differ.submitList(items);
+    }
+
+    private void invalidate() {
+        matches = null;
+        submit();
+    }
+
+    public void filter(@Nullable String query) {
+        if (query == null) query = "";
+        query = query.trim();
+        if (query.equals(this.query)) return;
+
+        if (this.query.isEmpty() || !contains(query, this.query)) matches = null;
+        this.query = query;
+        submit();
+    }
+
+    public boolean isFiltered() {
+        return !query.isEmpty();
+    }
+
+    public int version() {
+        return version;
     }
 
     public void saved() {
+        saved(version);
+    }
+
+    public void saved(int version) {
+        if (this.version != version) return;
+
         edited.clear();
-        notifyDataSetChanged();
         changed = false;
-
-        if (listener != null) listener.onItemsCountChanged(options.size());
+        invalidate();
     }
 
     private void changed() {
         changed = true;
+        version++;
     }
 
     public boolean hasChanged() {
@@ -85,61 +158,59 @@ public class SimpleOptionsAdapter extends RecyclerView.Adapter<SimpleOptionsAdap
     private void remove(int pos) {
         if (pos == -1) return;
 
-        edited.remove(pos);
-        options.remove(pos);
+        String key = differ.getCurrentList().get(pos).key;
+        options.remove(key);
+        edited.remove(key);
         changed();
-        notifyItemRemoved(pos);
-
-        if (listener != null) listener.onItemsCountChanged(options.size());
+        invalidate();
     }
 
     public void set(@NonNull Pair<String, String> newOption) {
-        for (int i = 0; i < options.size(); i++) {
-            if (options.get(i).first.equals(newOption.first)) {
-                options.set(i, newOption);
-                edited.add(i);
-                changed();
-                notifyItemChanged(i);
-                return;
-            }
-        }
+        if (!options.containsKey(newOption.first)) return;
+
+        options.put(newOption.first, newOption.second);
+        edited.add(newOption.first);
+        changed();
+        invalidate();
     }
 
     @NonNull
     public List<Pair<String, String>> get() {
-        return options;
+        List<Pair<String, String>> list = new ArrayList<>(options.size());
+        for (Map.Entry<String, String> entry : options.entrySet())
+            list.add(new Pair<>(entry.getKey(), entry.getValue()));
+
+        return list;
     }
 
     public void load(@Nullable JSONObject obj) throws JSONException {
         options.clear();
+        edited.clear();
 
         if (obj != null) {
             Iterator<String> iterator = obj.keys();
             while (iterator.hasNext()) {
                 String key = iterator.next();
-                options.add(new Pair<>(key, obj.getString(key)));
+                options.put(key, obj.getString(key));
             }
         }
 
-        notifyDataSetChanged();
-        if (listener != null) listener.onItemsCountChanged(options.size());
+        invalidate();
     }
 
     public void add(@NonNull List<Pair<String, String>> newOptions) {
-        options.addAll(newOptions);
-        notifyItemRangeInserted(options.size() - newOptions.size(), newOptions.size());
-        changed();
+        for (Pair<String, String> option : newOptions)
+            options.put(option.first, option.second);
 
-        if (listener != null) listener.onItemsCountChanged(options.size());
+        changed();
+        invalidate();
     }
 
     public void add(@NonNull Pair<String, String> option) {
-        options.add(option);
-        edited.add(options.size() - 1);
+        options.put(option.first, option.second);
+        edited.add(option.first);
         changed();
-        notifyItemInserted(options.size() - 1);
-
-        if (listener != null) listener.onItemsCountChanged(options.size());
+        invalidate();
     }
 
     public interface Listener {
@@ -148,6 +219,18 @@ public class SimpleOptionsAdapter extends RecyclerView.Adapter<SimpleOptionsAdap
         void onItemsCountChanged(int count);
     }
 
+    private static final class Item {
+        final String key;
+        final String value;
+        final boolean edited;
+
+        Item(@NonNull String key, @NonNull String value, boolean edited) {
+            this.key = key;
+            this.value = value;
+            this.edited = edited;
+        }
+    }
+
     class ViewHolder extends RecyclerView.ViewHolder {
         final TextView key;
         final TextView value;